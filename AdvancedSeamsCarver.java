@@ -1,8 +1,9 @@
 package edu.cg;
 
-import java.awt.Color;
 import java.awt.image.BufferedImage;
-import java.util.Arrays;
+
+import edu.cg.CarvingMetrics.Phase;
+import edu.cg.CarvingMetrics.PhaseTimer;
 
 public class AdvancedSeamsCarver extends BasicSeamsCarver {
 	private CarvingScheme carveScheme;
@@ -44,6 +45,7 @@ public class AdvancedSeamsCarver extends BasicSeamsCarver {
 		BufferedImage firstStepResult;
 		
 		this.carveScheme = carveScheme;
+		startProgress(this.numOfVerticalSeamsToCarve + this.numOfHorizontalSeamsToCarve);
 		prepareForRequiredScheme();
 		this.currentMode = this.firstMode;
 		firstStepResult = scaleInOneDimension(this.numOfSeamsToCarveInFirstDimension, this.firstDimensionScalesUp);
@@ -78,160 +80,71 @@ public class AdvancedSeamsCarver extends BasicSeamsCarver {
 	
 	private BufferedImage scaleInOneDimension(int numOfSeamsToCarve, boolean scaleUp) {
 		BufferedImage scalingResult;
-		this.carveSeams(numOfSeamsToCarve);
+		int numOfVerticalSeams = this.currentMode == VERTICAL ? numOfSeamsToCarve : 0;
+		int numOfHorizontalSeams = this.currentMode == VERTICAL ? 0 : numOfSeamsToCarve;
+		String cacheKey = seamCacheKey(this.currentMode == VERTICAL ? "VERTICAL" : "HORIZONTAL", numOfVerticalSeams, numOfHorizontalSeams);
 		if (scaleUp) {
-			scalingResult = scaleImageWidthOrHeightUp();
+			this.seamPixels = this.currentMode == VERTICAL ? new SeamPixelMap(inHeight, inWidth) : new SeamPixelMap(inWidth, inHeight);
+		}
+		if (!loadSeamsFromCache(cacheKey, numOfVerticalSeams, numOfHorizontalSeams)) {
+			this.carveSeams(numOfSeamsToCarve);
+			storeSeamsInCache(cacheKey);
+		}
+		else if (scaleUp) {
+			this.seamPixels.markSeams(this.currentMode == VERTICAL ? this.verticalSeams : this.horizontalSeams);
+		}
+		if (scaleUp) {
+			PhaseTimer timer = CarvingMetrics.start(Phase.MATERIALIZATION);
+			scalingResult = scaleImageWidthOrHeightUp(this.seamPixels);
+			timer.stop();
+			this.seamPixels = null;
 		}
 		else {
 			scalingResult = this.generateCarvedImage();
 		}
+		this.releaseSearchTables();
 		this.swapWorkingImage(scalingResult);
 		return scalingResult;
 	}
 	
-	private BufferedImage scaleImageWidthOrHeightUp() {
-		int[][] workingImage = duplicateWorkingImageAs2DArray();
-		int[][] result = new int[outHeight][outWidth];
-		int[][] transposedSeams;
+	/*
+	 * Every line is copied to the output in runs that end at a marked pixel, which is written once more
+	 * after its run. Rows are contiguous in both images; columns are copied a pixel at a time.
+	 */
+	private BufferedImage scaleImageWidthOrHeightUp(SeamPixelMap seamPixels) {
+		PixelBuffer result = newEmptyOutputSizedBuffer();
+		int[] pixels = this.workingPixels.pixels;
+		int[] resultPixels = result.pixels;
+		boolean vertical = this.currentMode == VERTICAL;
+		int numOfSeams = vertical ? outWidth - inWidth : outHeight - inHeight;
 		
-		transposedSeams = transposeAndSortSeams();
-		if (this.currentMode == VERTICAL) {
-			for (int y = 0 ; y < inHeight; y++) {
-				integrateSeamPixelsIntoRow(workingImage, result, y, transposedSeams[y]);
+		this.linesExecutor.forEachLine(seamPixels.numOfLines, seamPixels.lineLength, (line, fromPosition, toPosition) -> {
+			if (seamPixels.count(line) != numOfSeams) {
+				throw new IllegalStateException("Line " + line + " has " + seamPixels.count(line) + " seam pixels instead of " + numOfSeams);
 			}
-		}
-		else {
-			for (int x = 0 ; x < inWidth; x++) {
-				integrateSeamPixelsIntoColumn(workingImage, result, x, transposedSeams[x]);
-			}
-		}
-		
-		BufferedImage resultImage = convertRGBMatrixToBufferedImage(result);
-		
-		return resultImage;
-	}
-	
-	private int[][] transposeAndSortSeams(){
-		Coordinate[][] relevantSeamMatrix;
-		if (this.currentMode == VERTICAL) {
-			relevantSeamMatrix = this.verticalSeams;
-		}
-		else {
-			relevantSeamMatrix = this.horizontalSeams;
-		}
-		
-		int[][] seamMatrix = extractSignificantCoordinatesFromSeamMatrix(relevantSeamMatrix);
-		seamMatrix = transposeMatrix(seamMatrix);
-		sortMatrixRows(seamMatrix);
-		
-		return seamMatrix;
-	}
-	
-	private int[][] extractSignificantCoordinatesFromSeamMatrix(Coordinate[][] seamMatrix){
-		int [][] significantCoordinatesSeamMatrix = new int[seamMatrix.length][seamMatrix[0].length];
-		for (int i = 0 ; i < seamMatrix.length; i++) {
-			for (int j = 0 ; j < seamMatrix[0].length; j++) {
-				int significantCoordinate;
-				if (this.currentMode == VERTICAL) {
-					significantCoordinate = seamMatrix[i][j].X;
+			int from = 0;
+			int outPosition = 0;
+			for (int position = seamPixels.nextMarked(line, 0); ; position = seamPixels.nextMarked(line, position + 1)) {
+				int to = Math.min(position + 1, seamPixels.lineLength);
+				if (vertical) {
+					System.arraycopy(pixels, line * inWidth + from, resultPixels, line * outWidth + outPosition, to - from);
 				}
 				else {
-					significantCoordinate = seamMatrix[i][j].Y;
+					for (int y = from; y < to; y++) {
+						resultPixels[(outPosition + y - from) * outWidth + line] = pixels[y * inWidth + line];
+					}
 				}
-				significantCoordinatesSeamMatrix[i][j] = significantCoordinate;
-			}
-		}
-		return significantCoordinatesSeamMatrix;
-	}
-	
-	private static int[][] transposeMatrix(int[][] matrix){
-	    int height = matrix.length;
-	    int width = matrix[0].length;
-
-	    int[][] transposedMatrix = new int[width][height];
-	    for(int y = 0; y < height; y++) {
-	        for(int x = 0; x < width; x++) {
-	        	transposedMatrix[x][y] = matrix[y][x];
-	        }
-	    }
-	    return transposedMatrix;
-	}
-	
-	private static void sortMatrixRows(int[][] matrix){
-		for(int[] arr : matrix)
-			Arrays.sort(arr);
-	}
-	
-	private void integrateSeamPixelsIntoRow(int[][] workingImage, int[][] outImage, int y, int[] xCoordinatesToDuplicate) {
-		int x = 0;
-		int i = 0;
-		int numberOfPixelsDuplicatedSoFar = 0;
-		while (x < workingImage[0].length) {
-			outImage[y][x + numberOfPixelsDuplicatedSoFar] = workingImage[y][x];
-			if (i < xCoordinatesToDuplicate.length && x == xCoordinatesToDuplicate[i]) {
-				numberOfPixelsDuplicatedSoFar++;
-				outImage[y][x + numberOfPixelsDuplicatedSoFar] = workingImage[y][x];
-				i++;
-			}
-			x++;
-		}
-	}
-	
-	private void integrateSeamPixelsIntoColumn(int[][] workingImage, int[][] outImage, int x, int[] yCoordinatesToDuplicate) {
-		int y = 0;
-		int i = 0;
-		int numberOfPixelsDuplicatedSoFar = 0;
-		while (y < workingImage.length) {
-			outImage[y + numberOfPixelsDuplicatedSoFar][x] = workingImage[y][x];
-			if (i < yCoordinatesToDuplicate.length && y == yCoordinatesToDuplicate[i]) {
-				numberOfPixelsDuplicatedSoFar++;
-				outImage[y + numberOfPixelsDuplicatedSoFar][x] = workingImage[y][x];
-				i++;
-			}
-			y++;
-		}
-	}
-	
-	private BufferedImage convertRGBMatrixToBufferedImage(int [][] RGBMatrix) {
-		BufferedImage resultImage = newEmptyOutputSizedImage();
-		for (int y = 0; y < RGBMatrix.length; y++) {
-			for (int x = 0; x < RGBMatrix[0].length; x++) {
-				int rgb = RGBMatrix[y][x];
-				Color c = new Color(getRed(rgb), getGreen(rgb), getBlue(rgb));
-				resultImage.setRGB(x, y, c.getRGB());
+				outPosition += to - from;
+				if (position == seamPixels.lineLength) {
+					break;
+				}
+				resultPixels[vertical ? line * outWidth + outPosition : outPosition * outWidth + line] =
+						pixels[vertical ? line * inWidth + position : position * inWidth + line];
+				outPosition++;
+				from = position + 1;
 			}
-		}
-		
-		return resultImage;
-	}
-	
-	private int[][] duplicateWorkingImageAs2DArray() {
-		int[][] image = new int[inHeight][inWidth];
-		
-		forEach((y, x) -> {
-			Color c = new Color(workingImage.getRGB(x, y));
-			int r = c.getRed();
-			int g = c.getGreen();
-			int b = c.getBlue();
-			image[y][x] = getRGB(r, g, b);
 		});
 		
-		return image;
-	}
-	
-	private static int getRGB(int r, int g, int b) {
-		return (r << 16) | (g << 8) | b;
-	}
-	
-	private static int getRed(int rgb) {
-		return rgb >> 16;
-	}
-
-	private static int getGreen(int rgb) {
-		return (rgb >> 8) & 0xFF;
-	}
-	
-	private static int getBlue(int rgb) {
-		return rgb & 0xFF;
+		return result.toImage();
 	}
 }
\ No newline at end of file
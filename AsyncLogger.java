@@ -0,0 +1,179 @@
+package edu.cg;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/*
+ * A logger that never blocks the threads that log: messages are put in a bounded ring buffer, and a
+ * daemon thread drains it every few milliseconds and hands each batch to a sink (which, for a Swing
+ * component, passes it on to the event dispatch thread). When the buffer is full the message is
+ * dropped and counted, and the count is reported with the next batch.
+ *
+ * The buffer is lock free for any number of producers and the single drainer: every slot has a
+ * sequence number that says whether it is free for the producer of a position or full for the drainer
+ * (as in D. Vyukov's bounded queue). Logging a message stores its time, level and text in the slot's
+ * arrays, so the only allocation is the text itself, if the level is enabled at all.
+ *
+ * Closing the logger stops the drainer once it has handed the messages logged before to the sink, so
+ * they are not lost when the application exits; messages logged afterwards are ignored.
+ */
+public class AsyncLogger implements Logger, AutoCloseable {
+	public static final int DEFAULT_CAPACITY = 1 << 12;
+	public static final long DEFAULT_DRAIN_INTERVAL_MILLIS = 50;
+
+	public static final class Message {
+		public final long timeMillis;
+		public final Level level;
+		public final String text;
+
+		private Message(long timeMillis, Level level, String text) {
+			this.timeMillis = timeMillis;
+			this.level = level;
+			this.text = text;
+		}
+	}
+
+	private final int mask;
+	private final AtomicLongArray sequences;
+	private final long[] timesMillis;
+	private final Level[] levels;
+	private final String[] texts;
+	private final AtomicLong tail = new AtomicLong();
+	private final AtomicLong numOfDroppedMessages = new AtomicLong();
+	private long head;
+	private volatile Level minimumLevel = Level.INFO;
+	private final Consumer<List<Message>> sink;
+	private final long drainIntervalNanos;
+	private final Thread drainer;
+	private volatile boolean closed;
+
+	/*
+	 * The capacity is rounded up to a power of two.
+	 */
+	public AsyncLogger(int capacity, long drainIntervalMillis, Consumer<List<Message>> sink) {
+		int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+		this.mask = size - 1;
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			this.sequences.set(i, i);
+		}
+		this.timesMillis = new long[size];
+		this.levels = new Level[size];
+		this.texts = new String[size];
+		this.sink = sink;
+		this.drainIntervalNanos = TimeUnit.MILLISECONDS.toNanos(drainIntervalMillis);
+
+		this.drainer = new Thread(this::drainContinuously, "log-drainer");
+		this.drainer.setDaemon(true);
+		this.drainer.start();
+	}
+
+	public AsyncLogger(Consumer<List<Message>> sink) {
+		this(DEFAULT_CAPACITY, DEFAULT_DRAIN_INTERVAL_MILLIS, sink);
+	}
+
+	public void setLevel(Level minimumLevel) {
+		this.minimumLevel = minimumLevel;
+	}
+
+	@Override
+	public boolean isEnabled(Level level) {
+		return level.compareTo(this.minimumLevel) >= 0;
+	}
+
+	@Override
+	public void log(String s) {
+		log(Level.INFO, s);
+	}
+
+	@Override
+	public void log(Level level, String s) {
+		if (!isEnabled(level) || this.closed) {
+			return;
+		}
+		long position = this.tail.get();
+		int index;
+		while (true) {
+			index = (int)position & this.mask;
+			long difference = this.sequences.get(index) - position;
+			if (difference == 0) {
+				if (this.tail.compareAndSet(position, position + 1)) {
+					break;
+				}
+				position = this.tail.get();
+			}
+			else if (difference < 0) {
+				// The slot still holds the message of the previous lap: the buffer is full.
+				this.numOfDroppedMessages.incrementAndGet();
+				return;
+			}
+			else {
+				position = this.tail.get();
+			}
+		}
+		this.timesMillis[index] = System.currentTimeMillis();
+		this.levels[index] = level;
+		this.texts[index] = s == null ? "null" : s;
+		this.sequences.lazySet(index, position + 1);
+	}
+
+	/*
+	 * Only called by the drainer thread.
+	 */
+	private void drainTo(List<Message> batch) {
+		while (true) {
+			int index = (int)this.head & this.mask;
+			if (this.sequences.get(index) != this.head + 1) {
+				break;
+			}
+			batch.add(new Message(this.timesMillis[index], this.levels[index], this.texts[index]));
+			this.texts[index] = null;
+			this.sequences.lazySet(index, this.head + this.mask + 1);
+			this.head++;
+		}
+		long numOfDropped = this.numOfDroppedMessages.getAndSet(0);
+		if (numOfDropped > 0) {
+			batch.add(new Message(System.currentTimeMillis(), Level.WARNING,
+					numOfDropped + " log messages were dropped, the log buffer was full."));
+		}
+	}
+
+	private void drainContinuously() {
+		while (!this.closed) {
+			drainToSink();
+			LockSupport.parkNanos(this.drainIntervalNanos);
+		}
+		drainToSink();
+	}
+
+	private void drainToSink() {
+		List<Message> batch = new ArrayList<>();
+		drainTo(batch);
+		if (!batch.isEmpty()) {
+			try {
+				this.sink.accept(batch);
+			} catch (RuntimeException e) {
+				System.err.println("Failed to write a log batch: " + e);
+			}
+		}
+	}
+
+	/*
+	 * Waits for the drainer to hand the remaining messages to the sink. Closing it again does nothing.
+	 */
+	@Override
+	public void close() {
+		this.closed = true;
+		LockSupport.unpark(this.drainer);
+		try {
+			this.drainer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
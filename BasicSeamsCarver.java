@@ -1,12 +1,30 @@
 package edu.cg;
 
-import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.CancellationException;
+import java.util.function.IntConsumer;
+
+import edu.cg.CarvingMetrics.Phase;
+import edu.cg.CarvingMetrics.PhaseTimer;
+import edu.cg.Logger.Level;
 
 
 public class BasicSeamsCarver extends ImageProcessor {
 	public static final int VERTICAL = 0;
 	public static final int HORIZONTAL = 1;
+	private static final int NO_MODE = -1;
+	private static final int MAX_DIRTY_RANGES = 8;
+	private static final int TRANSPOSE_BLOCK_SIZE = 64;
+	private static final int MAX_SEAM_END_ATTEMPTS_PER_SEAM = 4;
+	public static final double DEFAULT_SEAM_COST_TOLERANCE = 0.1;
+	public static final double DEFAULT_HEAP_BUDGET_FRACTION = 0.5;
+	private static final long REGULAR_TABLES_BYTES_PER_PIXEL = 28;
 	
 	public static enum CarvingScheme {
 		VERTICAL_HORIZONTAL("Vertical seams first"),
@@ -20,28 +38,67 @@ public class BasicSeamsCarver extends ImageProcessor {
 		}
 	}
 	
-	protected class Coordinate{
-		public int X;
-		public int Y;
-		public Coordinate(int X, int Y) {
-			this.X = X;
-			this.Y = Y;
-		}
+	/*
+	 * Called on the carving thread after every pass of the search, and once for the seams of a seam
+	 * cache hit.
+	 */
+	public static interface ProgressListener {
+		public void seamsCarved(int numOfSeamsCarved, int numOfSeamsToCarve);
 	}
 	
+	/*
+	 * The working tables are kept transposed while horizontal seams are carved, so a horizontal seam
+	 * is a vertical seam of the tables and the same row-major code serves both directions.
+	 */
+	boolean tablesAreTransposed;
 	int[][] carvedGreyScaleImage;
+	double[][] energyTable;
 	double[][] DPTable;
 	int[][] minCoordinatesDPTable;
-	Coordinate[][] originalCoordinatesTable;
-	Coordinate[][] verticalSeams;
-	Coordinate[][] horizontalSeams;
+	/*
+	 * Original pixels are referred to by their linear index in the working image (y * inWidth + x),
+	 * so the bookkeeping costs one int per pixel instead of one object per pixel.
+	 */
+	int[][] originalIndicesTable;
+	SeamList verticalSeams;
+	SeamList horizontalSeams;
 	int currentCarvedHeight;
 	int currentCarvedWidth;
 	int currentMode;
+	int DPTableMode;
+	int[] lastRemovedSeam;
+	boolean incrementalCostsUpdate = true;
+	int seamsPerPass = 1;
+	double seamCostTolerance = DEFAULT_SEAM_COST_TOLERANCE;
+	int pyramidFactor = 1;
+	int pyramidBandRadius;
+	double[][] coarseCostsTable;
+	int[][] coarseMinCoordinatesTable;
+	double[][] coarseEnergyTable;
+	int coarseEnergyTableWidth;
+	double totalSeamsEnergy;
+	SeamCache seamCache;
+	BitSet horizontalSeamsInOrder;
+	int numOfSeamsInOrder;
+	/*
+	 * While set, the original pixels of every seam found are marked in it (see AdvancedSeamsCarver).
+	 */
+	SeamPixelMap seamPixels;
+	boolean searchTablesReady;
+	boolean compactMode;
+	CompactSeamSearch compactSearch;
+	OutOfCoreSeamSearch outOfCoreSearch;
+	long heapBudget = (long)(Runtime.getRuntime().maxMemory() * DEFAULT_HEAP_BUDGET_FRACTION);
+	Path outOfCoreDirectory = Paths.get(System.getProperty("java.io.tmpdir"));
+	EnergyFunction energyFunction = StandardEnergy.L2_GRADIENT;
+	boolean forwardEnergy = true;
+	ProgressListener progressListener;
+	int numOfSeamsCarvedInJob;
+	int numOfSeamsInJob;
 	
 	public BasicSeamsCarver(Logger logger, BufferedImage workingImage,
 			int outWidth, int outHeight, RGBWeights rgbWeights) {
-		super((s) -> logger.log("Seam carving: " + s), workingImage, rgbWeights, outWidth, outHeight);
+		super(logger.withPrefix("Seam carving: "), workingImage, rgbWeights, outWidth, outHeight);
 		this.logger.log("Performing initialization procedures for seam carving.");
 		prepareForSeamCarving();
 		this.logger.log("Initialization complete.");
@@ -50,40 +107,342 @@ public class BasicSeamsCarver extends ImageProcessor {
 	protected void prepareForSeamCarving() {
 		this.currentCarvedHeight = inHeight;
 		this.currentCarvedWidth = inWidth;
-		this.verticalSeams = new Coordinate[Math.abs(this.outWidth - this.inWidth)][];
-		this.horizontalSeams = new Coordinate[Math.abs(this.outHeight - this.inHeight)][];
-		initGreyScaleImage();
-		initCoordinatesTable();
-		initDPResources();
+		this.tablesAreTransposed = false;
+		this.verticalSeams = new SeamList(Math.abs(this.outWidth - this.inWidth));
+		this.horizontalSeams = new SeamList(Math.abs(this.outHeight - this.inHeight));
+		this.horizontalSeamsInOrder = new BitSet();
+		this.numOfSeamsInOrder = 0;
+		releaseSearchTables();
+	}
+	
+	/*
+	 * The working tables are only built when the first seam is searched for, so answers from the seam
+	 * cache skip them, and the compact and out-of-core modes never allocate the regular ones.
+	 */
+	private void initSearchTables() {
+		PhaseTimer timer = CarvingMetrics.start(Phase.GREYSCALE_INIT);
+		if (exceedsHeapBudget()) {
+			initOutOfCoreSearch();
+			timer.stop();
+		}
+		else if (this.compactMode) {
+			initOriginalIndicesTable();
+			this.compactSearch = new CompactSeamSearch(PixelBuffer.of(greyscale()).pixels, inWidth, inHeight, this.linesExecutor);
+			timer.stop();
+		}
+		else {
+			initOriginalIndicesTable();
+			initGreyScaleImage();
+			timer.stop();
+			timer = CarvingMetrics.start(Phase.ENERGY);
+			initEnergyTable();
+			timer.stop();
+			initDPResources();
+		}
+		this.searchTablesReady = true;
+	}
+	
+	/*
+	 * The regular tables take 28 bytes per pixel of heap, the compact ones about 5 (mostly the
+	 * original indices), besides the images themselves.
+	 */
+	private boolean exceedsHeapBudget() {
+		long numOfPixels = (long)inWidth * inHeight;
+		long footprint = this.compactMode ? numOfPixels * Integer.BYTES + numOfPixels * 5 / 4
+				: numOfPixels * REGULAR_TABLES_BYTES_PER_PIXEL;
+		return footprint > this.heapBudget;
+	}
+	
+	/*
+	 * The greyscale image is written to the tables a row at a time, so it is never on the heap as a whole.
+	 */
+	private void initOutOfCoreSearch() {
+		logger.log("The working tables exceed the heap budget, keeping them in " + this.outOfCoreDirectory);
+		try {
+			this.outOfCoreSearch = new OutOfCoreSeamSearch(this.outOfCoreDirectory, inWidth, inHeight, this.linesExecutor);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to create the out-of-core tables", e);
+		}
+		int[] row = new int[inWidth];
+		for (int y = 0; y < inHeight; y++) {
+			System.arraycopy(this.workingPixels.pixels, y * inWidth, row, 0, inWidth);
+			greyscalePixels(row, row, 0, inWidth);
+			this.outOfCoreSearch.initRow(y, row, inWidth);
+		}
+		this.compactSearch = this.outOfCoreSearch;
 	}
+	
+	/*
+	 * Also called once the result was generated, so the tables do not outlive the carving.
+	 */
+	protected void releaseSearchTables() {
+		if (this.outOfCoreSearch != null) {
+			try {
+				this.outOfCoreSearch.close();
+			} catch (IOException e) {
+				logger.log(Level.WARNING, "Failed to release the out-of-core tables: " + e.getMessage());
+			}
+			this.outOfCoreSearch = null;
+		}
+		this.originalIndicesTable = null;
+		this.carvedGreyScaleImage = null;
+		this.energyTable = null;
+		this.DPTable = null;
+		this.minCoordinatesDPTable = null;
+		this.compactSearch = null;
+		this.DPTableMode = NO_MODE;
+		this.lastRemovedSeam = null;
+		this.coarseCostsTable = null;
+		this.coarseMinCoordinatesTable = null;
+		this.coarseEnergyTable = null;
+		this.searchTablesReady = false;
+	}
+	
 	private void initGreyScaleImage() {
 		this.carvedGreyScaleImage = new int[inHeight][inWidth];
-		BufferedImage grey = greyscale();
+		int[] grey = PixelBuffer.of(greyscale()).pixels;
 		for (int y = 0; y < inHeight; y++) {
 			for (int x = 0; x < inWidth; x++) {
-				carvedGreyScaleImage[y][x] = new Color(grey.getRGB(x, y)).getRed();
+				carvedGreyScaleImage[y][x] = PixelBuffer.red(grey[y * inWidth + x]);
 			}
 		}
 	}
 	
-	private void initCoordinatesTable() {
-		this.originalCoordinatesTable = new Coordinate[inHeight][inWidth];
+	private void initOriginalIndicesTable() {
+		this.originalIndicesTable = new int[inHeight][inWidth];
 		for (int y = 0; y < inHeight; y++) {
 			for (int x = 0; x < inWidth; x++) {
-				originalCoordinatesTable[y][x] = new Coordinate(x,y);
+				originalIndicesTable[y][x] = y * inWidth + x;
 			}
 		}
 	}
 	
+	private void initEnergyTable() {
+		this.energyTable = new double[inHeight][inWidth];
+		populateEnergyTable();
+	}
+	
 	protected void initDPResources() {
-		this.DPTable = new double[this.currentCarvedHeight][this.currentCarvedWidth];
-		this.minCoordinatesDPTable = new int[this.currentCarvedHeight][this.currentCarvedWidth];
+		this.DPTable = new double[tableHeight()][tableWidth()];
+		this.minCoordinatesDPTable = new int[tableHeight()][tableWidth()];
+		this.DPTableMode = NO_MODE;
+		this.lastRemovedSeam = null;
+		this.coarseCostsTable = null;
+		this.coarseMinCoordinatesTable = null;
+		this.coarseEnergyTable = null;
+	}
+	
+	/*
+	 * The compact mode keeps about one byte of search state per pixel instead of 28 (see
+	 * CompactSeamSearch), for images whose regular tables do not fit in memory or in the caches. It
+	 * uses the L1 gradient energy with forward energy and integer costs whatever the energy function, and it
+	 * searches one seam per costs pass: the incremental costs update, seamsPerPass and the pyramid
+	 * search do not apply to it. It takes effect from the next carving.
+	 */
+	public void setCompactMode(boolean compactMode) {
+		if (compactMode != this.compactMode && this.searchTablesReady) {
+			throw new IllegalStateException("The compact mode can not be changed in the middle of carving.");
+		}
+		this.compactMode = compactMode;
+	}
+	
+	/*
+	 * The energy of the pixels, and whether the costs add the forward energy - the gradients a seam
+	 * creates by bringing its neighbours together - or only the energy of the seam's own pixels. The
+	 * default is the L2 gradient with forward energy. It takes effect from the next carving.
+	 */
+	public void setEnergyFunction(EnergyFunction energyFunction, boolean forwardEnergy) {
+		if (this.searchTablesReady) {
+			throw new IllegalStateException("The energy function can not be changed in the middle of carving.");
+		}
+		this.energyFunction = energyFunction;
+		this.forwardEnergy = forwardEnergy;
+	}
+	
+	/*
+	 * When the working tables of an image would take more heap than heapBudgetInBytes (by default
+	 * DEFAULT_HEAP_BUDGET_FRACTION of the maximum heap), they are kept in memory-mapped files in the
+	 * given directory (by default java.io.tmpdir) instead, see OutOfCoreSeamSearch. The out-of-core mode
+	 * finds the same seams as the compact mode, and it does not use the seam cache.
+	 */
+	public void setHeapBudget(long heapBudgetInBytes) {
+		if (this.searchTablesReady) {
+			throw new IllegalStateException("The heap budget can not be changed in the middle of carving.");
+		}
+		this.heapBudget = heapBudgetInBytes;
+	}
+	
+	public void setOutOfCoreDirectory(Path directory) {
+		this.outOfCoreDirectory = directory;
+	}
+	
+	public void setIncrementalCostsUpdate(boolean incrementalCostsUpdate) {
+		this.incrementalCostsUpdate = incrementalCostsUpdate;
+	}
+	
+	/*
+	 * Allows up to seamsPerPass pixel-disjoint seams to be removed after a single costs pass. A seam is
+	 * only added to a pass while its cost is within seamCostTolerance (relative) of the cheapest one,
+	 * so images whose seam costs diverge quickly still fall back to one seam per pass.
+	 */
+	public void setSeamsPerPass(int seamsPerPass, double seamCostTolerance) {
+		if (seamsPerPass < 1) {
+			throw new IllegalArgumentException("At least one seam must be carved per pass.");
+		}
+		if (seamCostTolerance < 0) {
+			throw new IllegalArgumentException("The seam cost tolerance can not be negative.");
+		}
+		this.seamsPerPass = seamsPerPass;
+		this.seamCostTolerance = seamCostTolerance;
+	}
+	
+	public void setSeamsPerPass(int seamsPerPass) {
+		setSeamsPerPass(seamsPerPass, this.seamCostTolerance);
+	}
+	
+	/*
+	 * Enables the coarse-to-fine seam search: every seam is first found on a copy of the energy that is
+	 * downsampled by pyramidFactor in both directions, and then refined at full resolution inside a band
+	 * of bandRadius pixels around the upsampled coarse seam. A factor of 1 restores the exact search.
+	 */
+	public void setPyramidSearch(int pyramidFactor, int bandRadius) {
+		if (pyramidFactor < 1) {
+			throw new IllegalArgumentException("The pyramid factor must be positive.");
+		}
+		if (bandRadius < pyramidFactor) {
+			throw new IllegalArgumentException("The band radius must be at least the pyramid factor.");
+		}
+		this.pyramidFactor = pyramidFactor;
+		this.pyramidBandRadius = bandRadius;
+		this.coarseCostsTable = null;
+		this.coarseMinCoordinatesTable = null;
+		this.coarseEnergyTable = null;
+	}
+	
+	public void setPyramidSearch(int pyramidFactor) {
+		setPyramidSearch(pyramidFactor, pyramidFactor);
+	}
+	
+	/*
+	 * The sum of the pixel energies of every seam carved so far, taken when each seam was removed.
+	 * Comparing it between the exact and the coarse-to-fine search shows how much seam quality was lost.
+	 */
+	public double getTotalSeamsEnergy() {
+		return this.totalSeamsEnergy;
+	}
+	
+	/*
+	 * With a seam cache, carving jobs that were already computed for the same image, weights, scheme
+	 * and settings are answered from the cache without searching for seams.
+	 */
+	public void setSeamCache(SeamCache seamCache) {
+		this.seamCache = seamCache;
+	}
+	
+	public void setProgressListener(ProgressListener progressListener) {
+		this.progressListener = progressListener;
+	}
+	
+	/*
+	 * The progress is counted over a whole job, which may carve in several calls to carveSeams.
+	 */
+	protected void startProgress(int numOfSeamsInJob) {
+		this.numOfSeamsCarvedInJob = 0;
+		this.numOfSeamsInJob = numOfSeamsInJob;
+	}
+	
+	private void reportProgress(int numOfSeamsCarved) {
+		this.numOfSeamsCarvedInJob += numOfSeamsCarved;
+		if (this.progressListener != null) {
+			this.progressListener.seamsCarved(this.numOfSeamsCarvedInJob, this.numOfSeamsInJob);
+		}
+	}
+	
+	private int tableWidth() {
+		return this.tablesAreTransposed ? this.currentCarvedHeight : this.currentCarvedWidth;
+	}
+	
+	private int tableHeight() {
+		return this.tablesAreTransposed ? this.currentCarvedWidth : this.currentCarvedHeight;
+	}
+	
+	/*
+	 * Transposes the working tables when the carving direction changes. This is paid once per switch,
+	 * and the costs matrix is reallocated since it has to be recalculated anyway.
+	 */
+	private void orientTablesForCurrentMode() {
+		boolean transpose = this.currentMode == HORIZONTAL;
+		if (transpose == this.tablesAreTransposed) {
+			return;
+		}
+		int height = tableHeight();
+		int width = tableWidth();
+		if (this.originalIndicesTable != null) {
+			this.originalIndicesTable = transpose(this.originalIndicesTable, height, width);
+		}
+		this.tablesAreTransposed = transpose;
+		PhaseTimer timer = CarvingMetrics.start(Phase.TRANSPOSITION);
+		if (this.compactSearch != null) {
+			this.compactSearch.transpose(height, width);
+			timer.stop();
+			return;
+		}
+		this.carvedGreyScaleImage = transpose(this.carvedGreyScaleImage, height, width);
+		this.energyTable = transpose(this.energyTable, height, width);
+		timer.stop();
+		initDPResources();
+	}
+	
+	private static int[][] transpose(int[][] table, int height, int width) {
+		int[][] transposed = new int[width][height];
+		for (int y0 = 0; y0 < height; y0 += TRANSPOSE_BLOCK_SIZE) {
+			for (int x0 = 0; x0 < width; x0 += TRANSPOSE_BLOCK_SIZE) {
+				int yEnd = Math.min(y0 + TRANSPOSE_BLOCK_SIZE, height);
+				int xEnd = Math.min(x0 + TRANSPOSE_BLOCK_SIZE, width);
+				for (int y = y0; y < yEnd; y++) {
+					for (int x = x0; x < xEnd; x++) {
+						transposed[x][y] = table[y][x];
+					}
+				}
+			}
+		}
+		return transposed;
+	}
+	
+	private static double[][] transpose(double[][] table, int height, int width) {
+		double[][] transposed = new double[width][height];
+		for (int y0 = 0; y0 < height; y0 += TRANSPOSE_BLOCK_SIZE) {
+			for (int x0 = 0; x0 < width; x0 += TRANSPOSE_BLOCK_SIZE) {
+				int yEnd = Math.min(y0 + TRANSPOSE_BLOCK_SIZE, height);
+				int xEnd = Math.min(x0 + TRANSPOSE_BLOCK_SIZE, width);
+				for (int y = y0; y < yEnd; y++) {
+					for (int x = x0; x < xEnd; x++) {
+						transposed[x][y] = table[y][x];
+					}
+				}
+			}
+		}
+		return transposed;
 	}
 	
 	public BufferedImage carveImage(CarvingScheme carvingMode) {
 		int numberOfVerticalSeamsToCarve = Math.abs(this.outWidth - this.inWidth);
 		int numberOfHorizontalSeamsToCarve = Math.abs(this.outHeight - this.inHeight);
+		String cacheKey = seamCacheKey(carvingMode.name(), numberOfVerticalSeamsToCarve, numberOfHorizontalSeamsToCarve);
+		startProgress(numberOfVerticalSeamsToCarve + numberOfHorizontalSeamsToCarve);
 		
+		try {
+			if (!loadSeamsFromCache(cacheKey, numberOfVerticalSeamsToCarve, numberOfHorizontalSeamsToCarve)) {
+				carveSeams(carvingMode, numberOfVerticalSeamsToCarve, numberOfHorizontalSeamsToCarve);
+				storeSeamsInCache(cacheKey);
+			}
+			return generateCarvedImage();
+		} finally {
+			releaseSearchTables();
+		}
+	}
+	
+	private void carveSeams(CarvingScheme carvingMode, int numberOfVerticalSeamsToCarve, int numberOfHorizontalSeamsToCarve) {
 		if (carvingMode == CarvingScheme.VERTICAL_HORIZONTAL) {
 			this.currentMode = VERTICAL;
 			carveSeams(numberOfVerticalSeamsToCarve);
@@ -99,9 +458,130 @@ public class BasicSeamsCarver extends ImageProcessor {
 		else {
 			carveSeamsIntermittently(numberOfVerticalSeamsToCarve, numberOfHorizontalSeamsToCarve);
 		}
-		BufferedImage carvedImage = generateCarvedImage();
-		
-		return carvedImage;
+	}
+	
+	protected String seamCacheKey(String label, int numOfVerticalSeams, int numOfHorizontalSeams) {
+		// Seams carved after others are only valid for the table those left.
+		if (this.seamCache == null || this.numOfSeamsInOrder > 0 || exceedsHeapBudget()) {
+			return null;
+		}
+		String job = label + "/" + numOfVerticalSeams + "/" + numOfHorizontalSeams
+				+ "/" + rgbWeights.redWeight + "," + rgbWeights.greenWeight + "," + rgbWeights.blueWeight
+				+ "/" + this.seamsPerPass + "," + this.seamCostTolerance
+				+ "/" + this.pyramidFactor + "," + this.pyramidBandRadius
+				+ "/" + this.energyFunction.getName() + (this.forwardEnergy ? ",forward" : ",backward")
+				+ (this.compactMode ? "/compact" : "");
+		return Long.toHexString(SeamCache.contentHash(this.workingImage)) + "-" + Long.toHexString(SeamCache.stringHash(job));
+	}
+	
+	/*
+	 * On a hit the cached seams are installed and the original indices table is brought to the state it
+	 * would have after carving them, by replaying the removals in their recorded order. The greyscale,
+	 * energy and costs tables are not restored, so only the images can be generated afterwards.
+	 */
+	protected boolean loadSeamsFromCache(String cacheKey, int numOfVerticalSeams, int numOfHorizontalSeams) {
+		if (cacheKey == null) {
+			return false;
+		}
+		SeamCache.Entry entry;
+		try {
+			entry = this.seamCache.lookup(cacheKey, this.currentCarvedWidth, this.currentCarvedHeight);
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Failed to read from the seam cache: " + e.getMessage());
+			return false;
+		}
+		if (entry == null || entry.verticalSeams.size() != numOfVerticalSeams || entry.horizontalSeams.size() != numOfHorizontalSeams) {
+			return false;
+		}
+		logger.log("Found " + entry.isHorizontalInOrder.length + " seams in the seam cache.");
+		this.verticalSeams = entry.verticalSeams;
+		this.horizontalSeams = entry.horizontalSeams;
+		for (boolean isHorizontal : entry.isHorizontalInOrder) {
+			this.horizontalSeamsInOrder.set(this.numOfSeamsInOrder++, isHorizontal);
+		}
+		if (this.originalIndicesTable == null) {
+			initOriginalIndicesTable();
+		}
+		replaySeamRemovals(entry.isHorizontalInOrder, false, null);
+		reportProgress(entry.isHorizontalInOrder.length);
+		return true;
+	}
+	
+	/*
+	 * The seams are positions in the tables they were removed from, so they are removed from the original
+	 * indices table, which has to be in the image's orientation, pass after pass in their recorded order.
+	 * removedPixelAction, if given, is called with the original index of every removed pixel of the
+	 * seams in the marked direction.
+	 */
+	private void replaySeamRemovals(boolean[] isHorizontalInOrder, boolean markHorizontal, IntConsumer removedPixelAction) {
+		int nextVerticalSeam = 0, nextHorizontalSeam = 0;
+		int i = 0;
+		while (i < isHorizontalInOrder.length) {
+			boolean horizontal = isHorizontalInOrder[i];
+			SeamList seams = horizontal ? this.horizontalSeams : this.verticalSeams;
+			int firstSeam = horizontal ? nextHorizontalSeam : nextVerticalSeam;
+			int endSeam = firstSeam + 1;
+			while (endSeam < seams.size() && seams.sharesPassWithPrevious(endSeam)) {
+				endSeam++;
+			}
+			int[][] pass = new int[endSeam - firstSeam][];
+			for (int seam = firstSeam; seam < endSeam; seam++) {
+				pass[seam - firstSeam] = seams.positions(seam);
+			}
+			removeSeamsFromOriginalIndices(pass, horizontal, horizontal == markHorizontal ? removedPixelAction : null);
+			if (horizontal) {
+				this.currentCarvedHeight -= pass.length;
+				nextHorizontalSeam = endSeam;
+			}
+			else {
+				this.currentCarvedWidth -= pass.length;
+				nextVerticalSeam = endSeam;
+			}
+			i += pass.length;
+		}
+	}
+	
+	private void removeSeamsFromOriginalIndices(int[][] pass, boolean horizontal, IntConsumer removedPixelAction) {
+		int numOfLines = horizontal ? this.currentCarvedWidth : this.currentCarvedHeight;
+		int lineLength = horizontal ? this.currentCarvedHeight : this.currentCarvedWidth;
+		int[] positions = new int[pass.length];
+		for (int line = 0; line < numOfLines; line++) {
+			for (int i = 0; i < pass.length; i++) {
+				positions[i] = pass[i][line];
+			}
+			Arrays.sort(positions);
+			int next = 0, outPosition = 0;
+			for (int position = 0; position < lineLength; position++) {
+				int originalPixelIndex = horizontal ? this.originalIndicesTable[position][line] : this.originalIndicesTable[line][position];
+				if (next < positions.length && positions[next] == position) {
+					next++;
+					if (removedPixelAction != null) {
+						removedPixelAction.accept(originalPixelIndex);
+					}
+				}
+				else if (horizontal) {
+					this.originalIndicesTable[outPosition++][line] = originalPixelIndex;
+				}
+				else {
+					this.originalIndicesTable[line][outPosition++] = originalPixelIndex;
+				}
+			}
+		}
+	}
+	
+	protected void storeSeamsInCache(String cacheKey) {
+		if (cacheKey == null) {
+			return;
+		}
+		boolean[] isHorizontalInOrder = new boolean[this.numOfSeamsInOrder];
+		for (int i = 0; i < isHorizontalInOrder.length; i++) {
+			isHorizontalInOrder[i] = this.horizontalSeamsInOrder.get(i);
+		}
+		try {
+			this.seamCache.store(cacheKey, new SeamCache.Entry(this.verticalSeams, this.horizontalSeams, isHorizontalInOrder));
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Failed to write to the seam cache: " + e.getMessage());
+		}
 	}
 	
 	private void carveSeamsIntermittently(int numberOfVerticalSeamsToCarve, int numberOfHorizontalSeamsToCarve) {
@@ -129,89 +609,321 @@ public class BasicSeamsCarver extends ImageProcessor {
 	}
 	
 	protected void carveSeams(int numOfSeamsToCarve) {
-		logger.log("Carving " + numOfSeamsToCarve + " seams from the image.");
-		for (int i = 0; i < numOfSeamsToCarve; i++) {
-			logger.log("Carving seam no. " + (i + 1));
-			findAndRemoveSeam();
+		logger.log(Level.DEBUG, () -> "Carving " + numOfSeamsToCarve + " seams from the image.");
+		if (!this.searchTablesReady) {
+			if (this.numOfSeamsInOrder > 0) {
+				// The seams came from the seam cache, which does not restore the tables they were carved from.
+				prepareForSeamCarving();
+			}
+			initSearchTables();
 		}
-	}
-	
-	private void findAndRemoveSeam() {
-		populateDPTableWithPixelEnergy();
-		populateDPTableWithMinimalCosts();
-		Coordinate[] optimalSeam = reconstructOptimalSeam();
-		storeOptimalSeam(optimalSeam);
-		carveSeamFromGreyscaleAndCoordinatesTable(optimalSeam);
-		updateCarvedProportions();
-	}
-	
-	private void populateDPTableWithPixelEnergy() {
-		for (int y = 0; y < this.currentCarvedHeight; y++) {
-			for (int x = 0; x < this.currentCarvedWidth; x++) {
-				this.DPTable[y][x] = calcPixelEnergy(y,x); 
+		orientTablesForCurrentMode();
+		int numOfSeamsCarved = 0;
+		while (numOfSeamsCarved < numOfSeamsToCarve) {
+			if (Thread.currentThread().isInterrupted()) {
+				logger.log("Carving was cancelled after " + numOfSeamsCarved + " seams.");
+				releaseSearchTables();
+				throw new CancellationException("Seam carving was cancelled.");
 			}
+			if (logger.isEnabled(Level.DEBUG)) {
+				logger.log(Level.DEBUG, "Carving seam no. " + (numOfSeamsCarved + 1));
+			}
+			int numOfSeamsFound = findAndRemoveSeams(Math.min(this.seamsPerPass, numOfSeamsToCarve - numOfSeamsCarved));
+			numOfSeamsCarved += numOfSeamsFound;
+			reportProgress(numOfSeamsFound);
 		}
 	}
 	
-	private double calcPixelEnergy(int y, int x) {
-		double eVertical, eHorizontal;
-		int nextX = x, nextY = y;
-		
-		if (x + 1 < this.currentCarvedWidth) {
-			nextX++;
+	private int findAndRemoveSeams(int maxNumOfSeams) {
+		if (this.compactSearch != null) {
+			return findAndRemoveSeamCompactly();
+		}
+		int[][] optimalSeams;
+		boolean searchCoarseToFine = this.pyramidFactor > 1
+				&& tableHeight() >= 2 * this.pyramidFactor && tableWidth() >= 2 * this.pyramidFactor;
+		PhaseTimer timer = CarvingMetrics.start(Phase.COSTS);
+		if (searchCoarseToFine) {
+			optimalSeams = new int[][] { findSeamCoarseToFine() };
+			timer.stop();
+		}
+		else {
+			populateDPTableWithMinimalCosts();
+			timer.stop();
+			timer = CarvingMetrics.start(Phase.BACKTRACK);
+			optimalSeams = reconstructOptimalSeams(maxNumOfSeams);
+			timer.stop();
+		}
+		accumulateSeamsEnergy(optimalSeams);
+		timer = CarvingMetrics.start(Phase.SEAM_STORAGE);
+		storeOptimalSeams(optimalSeams);
+		timer.stop();
+		timer = CarvingMetrics.start(Phase.COMPACTION);
+		if (optimalSeams.length == 1) {
+			carveSeamFromGreyscaleAndCoordinatesTable(optimalSeams[0]);
 		}
 		else {
-			nextX--;
+			carveDisjointSeamsFromTables(optimalSeams);
 		}
-		if (y + 1 < this.currentCarvedHeight) {
-			nextY++;
+		timer.stop();
+		updateCarvedProportions(optimalSeams.length);
+		timer = CarvingMetrics.start(Phase.ENERGY);
+		updateEnergyTableAroundSeams(optimalSeams);
+		timer.stop();
+		if (optimalSeams.length == 1 && !searchCoarseToFine) {
+			this.DPTableMode = this.currentMode;
+			this.lastRemovedSeam = optimalSeams[0];
 		}
 		else {
-			nextY--;
+			// The incremental costs update follows a single, fully calculated seam only.
+			this.DPTableMode = NO_MODE;
+			this.lastRemovedSeam = null;
 		}
-		eVertical = Math.abs(this.carvedGreyScaleImage[y][nextX] - this.carvedGreyScaleImage[y][x]);
-		eHorizontal = Math.abs(this.carvedGreyScaleImage[nextY][x] - this.carvedGreyScaleImage[y][x]);
-		eVertical = Math.pow(eVertical, 2);
-		eHorizontal = Math.pow(eHorizontal, 2);
-		return Math.sqrt(eVertical + eHorizontal);
+		return optimalSeams.length;
 	}
 	
-	private void populateDPTableWithMinimalCosts() {
-		logger.log("Calculating the costs matrix \"m\".");
-		if (this.currentMode == VERTICAL) {
-			for (int y = 0; y < this.currentCarvedHeight; y++) {
-				for (int x = 0; x < this.currentCarvedWidth; x++) {
-					calcAndSetMinCostAtPixel(y,x);
+	private int findAndRemoveSeamCompactly() {
+		int height = tableHeight();
+		int width = tableWidth();
+		logger.log(Level.DEBUG, "Calculating the compact costs matrix \"m\".");
+		int[] seam = this.compactSearch.findSeam(height, width, this.currentMode == VERTICAL);
+		this.totalSeamsEnergy += this.compactSearch.seamEnergy(seam, height, width);
+		PhaseTimer timer = CarvingMetrics.start(Phase.SEAM_STORAGE);
+		storeOptimalSeam(seam, 0);
+		timer.stop();
+		timer = CarvingMetrics.start(Phase.COMPACTION);
+		this.compactSearch.removeSeam(seam, width);
+		for (int y = 0; this.originalIndicesTable != null && y < height; y++) {
+			System.arraycopy(this.originalIndicesTable[y], seam[y] + 1, this.originalIndicesTable[y], seam[y], width - seam[y] - 1);
+		}
+		timer.stop();
+		updateCarvedProportions(1);
+		return 1;
+	}
+	
+	/*
+	 * The row kernels implement the L2 gradient: with them, every pixel but the last of a row is computed
+	 * by the kernel, and the last one (whose gradient looks backwards) by calcPixelEnergy.
+	 */
+	private void populateEnergyTable() {
+		int height = tableHeight();
+		int width = tableWidth();
+		RowKernels kernels = height > 1 && this.energyFunction == StandardEnergy.L2_GRADIENT ? this.rowKernels : null;
+		this.linesExecutor.forEachLine(height, width, (y, fromX, toX) -> {
+			int x = fromX;
+			if (kernels != null && x < width - 1) {
+				int nextY = y + 1 < height ? y + 1 : y - 1;
+				x = Math.min(toX, width - 1);
+				kernels.energyRow(this.carvedGreyScaleImage[y], this.carvedGreyScaleImage[nextY], this.energyTable[y], fromX, x);
+			}
+			this.energyFunction.energyRow(this.carvedGreyScaleImage, height, width, y, this.energyTable[y], x, toX);
+		});
+	}
+	
+	/*
+	 * Removing a seam only changes the energy of the pixels that were next to it, the rest of the
+	 * energy table is shifted along with the greyscale image. A pixel's energy depends on the pixels
+	 * up to the neighbourhood radius r away, so a pixel keeps its energy unless the seam passes within
+	 * r columns of it in one of the r rows above or below it: the band from r columns left of the
+	 * leftmost seam position in those rows to r - 1 columns right of the rightmost one is re-evaluated,
+	 * together with the new last column. When several seams were removed together they are paired by
+	 * their order within the row, which is what the shift follows.
+	 */
+	private void updateEnergyTableAroundSeams(int[][] seams) {
+		int height = tableHeight();
+		int width = tableWidth();
+		int radius = this.energyFunction.getNeighbourhoodRadius();
+		int[][] positions = new int[height][seams.length];
+		for (int y = 0; y < height; y++) {
+			collectSortedSeamPositions(seams, y, positions[y]);
+		}
+		for (int y = 0; y < height; y++) {
+			for (int i = 0; i < seams.length; i++) {
+				int minSeamX = Integer.MAX_VALUE, maxSeamX = Integer.MIN_VALUE;
+				for (int neighbourY = Math.max(y - radius, 0); neighbourY <= Math.min(y + radius, height - 1); neighbourY++) {
+					minSeamX = Math.min(minSeamX, positions[neighbourY][i] - i);
+					maxSeamX = Math.max(maxSeamX, positions[neighbourY][i] - i);
 				}
+				int fromX = Math.max(minSeamX - radius, 0);
+				int toX = Math.min(maxSeamX + radius - 1, width - 1);
+				for (int x = fromX; x <= toX; x++) {
+					this.energyTable[y][x] = calcPixelEnergy(y,x);
+				}
+			}
+			this.energyTable[y][width - 1] = calcPixelEnergy(y, width - 1);
+		}
+	}
+	
+	private static void collectSortedSeamPositions(int[][] seams, int y, int[] positions) {
+		for (int i = 0; i < seams.length; i++) {
+			int position = seams[i][y];
+			int j = i;
+			while (j > 0 && positions[j - 1] > position) {
+				positions[j] = positions[j - 1];
+				j--;
 			}
+			positions[j] = position;
+		}
+	}
+	
+	private double calcPixelEnergy(int y, int x) {
+		return this.energyFunction.pixelEnergy(this.carvedGreyScaleImage, tableHeight(), tableWidth(), y, x);
+	}
+	
+	private void populateDPTableWithMinimalCosts() {
+		logger.log(Level.DEBUG, "Calculating the costs matrix \"m\".");
+		if (this.incrementalCostsUpdate && this.DPTableMode == this.currentMode && this.lastRemovedSeam != null) {
+			updateDPTableAroundLastSeam();
 		}
 		else {
-			for (int x = 0; x < this.currentCarvedWidth; x++) {
-				for (int y = 0; y < this.currentCarvedHeight; y++) {
-					calcAndSetMinCostAtPixel(y,x);
+			this.linesExecutor.forEachLineInOrder(tableHeight(), tableWidth(), this::calcAndSetMinCostsAtLine);
+		}
+	}
+	
+	/*
+	 * The costs matrix of the previous seam was shifted along with the greyscale image, so only cells
+	 * whose inputs were touched by the removed seam have to be recalculated. Those are a narrow band
+	 * around the seam, as wide as the band of recalculated energies (see updateEnergyTableAroundSeams)
+	 * and at least as wide as the forward energy terms need, and the last column, which lost its
+	 * neighbour, plus every cell below a cell whose cost actually changed. The change propagates as a
+	 * cone that widens by one pixel per row, and it dies out as soon as the recalculated costs equal
+	 * the old ones.
+	 */
+	private void updateDPTableAroundLastSeam() {
+		int numOfLines = tableHeight();
+		int lineLength = tableWidth();
+		int[] dirtyRanges = new int[2 * MAX_DIRTY_RANGES];
+		int[] candidateRanges = new int[2 * (MAX_DIRTY_RANGES + 2)];
+		int numOfDirtyRanges = 0;
+		int radius = Math.max(this.energyFunction.getNeighbourhoodRadius(), 1);
+		
+		for (int line = 0; line < numOfLines; line++) {
+			int minSeamPosition = Integer.MAX_VALUE, maxSeamPosition = Integer.MIN_VALUE;
+			for (int neighbourLine = Math.max(line - radius, 0); neighbourLine <= Math.min(line + radius, numOfLines - 1); neighbourLine++) {
+				minSeamPosition = Math.min(minSeamPosition, this.lastRemovedSeam[neighbourLine]);
+				maxSeamPosition = Math.max(maxSeamPosition, this.lastRemovedSeam[neighbourLine]);
+			}
+			int numOfCandidateRanges = 2;
+			
+			candidateRanges[0] = minSeamPosition - radius - 1;
+			candidateRanges[1] = maxSeamPosition + radius;
+			candidateRanges[2] = lineLength - 1;
+			candidateRanges[3] = lineLength - 1;
+			for (int i = 0; i < numOfDirtyRanges; i++) {
+				candidateRanges[2 * numOfCandidateRanges] = dirtyRanges[2 * i] - 1;
+				candidateRanges[2 * numOfCandidateRanges + 1] = dirtyRanges[2 * i + 1] + 1;
+				numOfCandidateRanges++;
+			}
+			numOfCandidateRanges = mergeRanges(candidateRanges, numOfCandidateRanges, lineLength);
+			
+			numOfDirtyRanges = 0;
+			for (int i = 0; i < numOfCandidateRanges; i++) {
+				int changedFrom = -1, changedTo = -1;
+				for (int position = candidateRanges[2 * i]; position <= candidateRanges[2 * i + 1]; position++) {
+					if (recalcMinCostAndCheckChange(line, position)) {
+						if (changedFrom < 0) {
+							changedFrom = position;
+						}
+						changedTo = position;
+					}
+				}
+				if (changedFrom >= 0) {
+					numOfDirtyRanges = appendRange(dirtyRanges, numOfDirtyRanges, changedFrom, changedTo);
 				}
 			}
 		}
 	}
 	
-	private void calcAndSetMinCostAtPixel(int y, int x) {
-		if (this.currentMode == VERTICAL) {
-			calcAndSetVerticalMinCostAtPixel(y,x);
+	private boolean recalcMinCostAndCheckChange(int y, int x) {
+		double previousCost = this.DPTable[y][x];
+		calcAndSetMinCostAtPixel(y,x);
+		return this.DPTable[y][x] != previousCost;
+	}
+	
+	/*
+	 * Clips the ranges to [0, lineLength), sorts them and merges the overlapping ones in place.
+	 * Returns the number of ranges left.
+	 */
+	private static int mergeRanges(int[] ranges, int numOfRanges, int lineLength) {
+		int numOfValidRanges = 0;
+		for (int i = 0; i < numOfRanges; i++) {
+			int from = Math.max(ranges[2 * i], 0);
+			int to = Math.min(ranges[2 * i + 1], lineLength - 1);
+			if (from > to) {
+				continue;
+			}
+			int j = numOfValidRanges;
+			while (j > 0 && ranges[2 * (j - 1)] > from) {
+				ranges[2 * j] = ranges[2 * (j - 1)];
+				ranges[2 * j + 1] = ranges[2 * (j - 1) + 1];
+				j--;
+			}
+			ranges[2 * j] = from;
+			ranges[2 * j + 1] = to;
+			numOfValidRanges++;
 		}
-		else {
-			calcAndSetHorizontalMinCostAtPixel(y,x);
+		
+		int numOfMergedRanges = 0;
+		for (int i = 0; i < numOfValidRanges; i++) {
+			if (numOfMergedRanges > 0 && ranges[2 * i] <= ranges[2 * numOfMergedRanges - 1] + 1) {
+				ranges[2 * numOfMergedRanges - 1] = Math.max(ranges[2 * numOfMergedRanges - 1], ranges[2 * i + 1]);
+			}
+			else {
+				ranges[2 * numOfMergedRanges] = ranges[2 * i];
+				ranges[2 * numOfMergedRanges + 1] = ranges[2 * i + 1];
+				numOfMergedRanges++;
+			}
+		}
+		return numOfMergedRanges;
+	}
+	
+	/*
+	 * Ranges are appended in ascending order. When there is no more room the last range is widened
+	 * instead, which only makes the next line recalculate a few more cells than it has to.
+	 */
+	private static int appendRange(int[] ranges, int numOfRanges, int from, int to) {
+		if (numOfRanges == MAX_DIRTY_RANGES) {
+			ranges[2 * numOfRanges - 1] = to;
+			return numOfRanges;
 		}
+		ranges[2 * numOfRanges] = from;
+		ranges[2 * numOfRanges + 1] = to;
+		return numOfRanges + 1;
 	}
 	
-	private void calcAndSetVerticalMinCostAtPixel(int y, int x) {
+	/*
+	 * The row kernels cover the pixels that have both neighbours, below the first row.
+	 */
+	private void calcAndSetMinCostsAtLine(int y, int fromX, int toX) {
+		int x = fromX;
+		RowKernels kernels = this.forwardEnergy ? this.rowKernels : null;
+		if (kernels != null && y > 0) {
+			int innerFrom = Math.max(fromX, 1);
+			int innerTo = Math.min(toX, tableWidth() - 1);
+			if (innerFrom < innerTo) {
+				for (; x < innerFrom; x++) {
+					calcAndSetMinCostAtPixel(y,x);
+				}
+				kernels.forwardCostsRow(this.carvedGreyScaleImage[y-1], this.carvedGreyScaleImage[y], this.DPTable[y-1],
+						this.energyTable[y], this.DPTable[y], this.minCoordinatesDPTable[y], innerFrom, innerTo,
+						this.currentMode == VERTICAL);
+				x = innerTo;
+			}
+		}
+		for (; x < toX; x++) {
+			calcAndSetMinCostAtPixel(y,x);
+		}
+	}
+	
+	private void calcAndSetMinCostAtPixel(int y, int x) {
 		double min = 0;
 		int minX = x;
+		int width = tableWidth();
 		long cl = 0, cv = 0, cr = 0;
 		double ml, mv, mr;
 		if(y > 0) {
 			mv = this.DPTable[y-1][x];
 			
-			if(x > 0 & x+1 < this.currentCarvedWidth)
+			if(x > 0 & x+1 < width)
 				cl = cv = cr = Math.abs(this.carvedGreyScaleImage[y][x-1] - this.carvedGreyScaleImage[y][x+1]);
 			//else 
 				//cl = cv = cr = 255; // This part discourages selecting corner pixels.
@@ -224,7 +936,7 @@ public class BasicSeamsCarver extends ImageProcessor {
 				ml = Integer.MAX_VALUE;
 			}
 			
-			if(x+1 < currentCarvedWidth) {
+			if(x+1 < width) {
 				cr += Math.abs(this.carvedGreyScaleImage[y-1][x] - this.carvedGreyScaleImage[y][x+1]);
 				mr = this.DPTable[y-1][x+1];
 			} else {
@@ -232,196 +944,353 @@ public class BasicSeamsCarver extends ImageProcessor {
 				mr = Integer.MAX_VALUE;
 			}
 			
+			if (!this.forwardEnergy) {
+				cl = cv = cr = 0;
+			}
 			double sumL = ml+cl;
 			double sumV = mv+cv;
 			double sumR = mr+cr;
 			
 			min = Math.min(Math.min(sumL, sumV), sumR);
 			
-			if(min == sumR & x+1 < this.currentCarvedWidth)
-				minX = x+1;
-			else if(min == sumL & x > 0)
-				minX = x-1;
+			// Vertical seams break ties to the right and horizontal seams upwards, which is the
+			// left neighbour in the transposed tables.
+			if (this.currentMode == VERTICAL) {
+				if(min == sumR & x+1 < width)
+					minX = x+1;
+				else if(min == sumL & x > 0)
+					minX = x-1;
+			}
+			else {
+				if(min == sumL & x > 0)
+					minX = x-1;
+				else if(min == sumR & x+1 < width)
+					minX = x+1;
+			}
 		}
 		
-		this.DPTable[y][x] += min;
+		this.DPTable[y][x] = this.energyTable[y][x] + min;
 		this.minCoordinatesDPTable[y][x] = minX;
 	}
 	
-	private void calcAndSetHorizontalMinCostAtPixel(int y, int x) {
-		double min = 0;
-		int minY = y;
-		long cd = 0, ch = 0, cu = 0;
-		double md, mh, mu;
-		if(x > 0) {
-			mh = this.DPTable[y][x-1];
+	/*
+	 * A seam is returned as the position of its pixel in every row of the tables: the x coordinate of
+	 * each image row for a vertical seam, and the y coordinate of each image column for a horizontal one.
+	 * The first seam is always the optimal one. Further seams are backtracked from the next cheapest ends
+	 * of the costs matrix and kept if they share no pixel with the seams already chosen.
+	 */
+	private int[][] reconstructOptimalSeams(int maxNumOfSeams){
+		int height = tableHeight();
+		int width = tableWidth();
+		int[][] optimalSeams = new int[maxNumOfSeams][];
+		boolean[] triedSeamEnds = new boolean[width];
 			
-			if(y > 0 & y+1 < this.currentCarvedHeight)
-				cd = ch = cu = Math.abs(this.carvedGreyScaleImage[y-1][x] - this.carvedGreyScaleImage[y+1][x]);
-			//else // This part discourages selecting corner pixels.
-				//cd = ch = cu = 255;
+		logger.log(Level.DEBUG, "Reconstructing the optimal seam from the costs matrix.");
+		int minX = findCheapestUntriedSeamEnd(triedSeamEnds);
+		double maxCost = this.DPTable[height-1][minX] * (1 + this.seamCostTolerance);
+		triedSeamEnds[minX] = true;
+		optimalSeams[0] = backtrackSeam(minX);
+		int numOfSeams = 1;
 			
-			if(y + 1 < this.currentCarvedHeight) {
-				cd += Math.abs(this.carvedGreyScaleImage[y+1][x] - this.carvedGreyScaleImage[y][x-1]);
-				md = this.DPTable[y+1][x-1];
-			} else {
-				cd = 0;
-				md = Integer.MAX_VALUE;
+		for (int attempt = 0; numOfSeams < maxNumOfSeams && attempt < MAX_SEAM_END_ATTEMPTS_PER_SEAM * maxNumOfSeams; attempt++) {
+			int x = findCheapestUntriedSeamEnd(triedSeamEnds);
+			if (x < 0 || this.DPTable[height-1][x] > maxCost) {
+				break;
 			}
-			
-			if(y > 0) {
-				cu += Math.abs(this.carvedGreyScaleImage[y-1][x] - this.carvedGreyScaleImage[y][x-1]);
-				mu = this.DPTable[y-1][x-1];
-			} else {
-				cu = 0;
-				mu = Integer.MAX_VALUE;
+			triedSeamEnds[x] = true;
+			int[] seam = backtrackSeam(x);
+			if (isDisjointFromSeams(seam, optimalSeams, numOfSeams)) {
+				optimalSeams[numOfSeams++] = seam;
 			}
-			
-			double sumD = md+cd;
-			double sumH = mh+ch;
-			double sumU = mu+cu;
-			
-			min = Math.min(Math.min(sumD, sumH), sumU);
-			
-			if(min == sumU & y > 0)
-				minY = y-1;
-			else if(min == sumD & y + 1 < this.currentCarvedHeight)
-				minY = y+1;
 		}
 		
-		this.DPTable[y][x] += min;
-		this.minCoordinatesDPTable[y][x] = minY;
-	}
-	
-	private Coordinate[] reconstructOptimalSeam(){
-		Coordinate[] optimalSeam;
-		
-		logger.log("Reconstructing the optimal seam from the costs matrix.");
-		if (this.currentMode == VERTICAL) {
-			optimalSeam = reconstructOptimalVerticalSeam();
-		}
-		else {
-			optimalSeam = reconstructOptimalHorizontalSeam();
-		}
-		return optimalSeam;
+		return Arrays.copyOf(optimalSeams, numOfSeams);
 	}
 	
-	private Coordinate[] reconstructOptimalVerticalSeam() {
-		Coordinate[] optimalSeam = new Coordinate[this.currentCarvedHeight];
-		int minX = 0;
-		for(int x = 0; x < this.currentCarvedWidth; x++)
+	private int findCheapestUntriedSeamEnd(boolean[] triedSeamEnds) {
+		int height = tableHeight();
+		int minX = -1;
+		for(int x = 0; x < triedSeamEnds.length; x++)
 		{
-			if(this.DPTable[this.currentCarvedHeight-1][x] < this.DPTable[this.currentCarvedHeight-1][minX])
+			if(!triedSeamEnds[x] && (minX < 0 || this.DPTable[height-1][x] < this.DPTable[height-1][minX]))
 			{
 				minX = x;
 			}
 		}
+		return minX;
+	}
 		
-		for(int y = this.currentCarvedHeight-1; y > -1; --y) {
-			optimalSeam[y] = new Coordinate(minX, y);
+	private int[] backtrackSeam(int minX) {
+		int height = tableHeight();
+		int[] seam = new int[height];
+		for(int y = height-1; y > -1; --y) {
+			seam[y] = minX;
 			minX = this.minCoordinatesDPTable[y][minX];
 		}
-		
-		return optimalSeam;
+		return seam;
 	}
 	
-	private Coordinate[] reconstructOptimalHorizontalSeam() {
-		Coordinate[] optimalSeam = new Coordinate[this.currentCarvedWidth];
-		int minY = 0;
-		for(int y = 0; y < this.currentCarvedHeight; y++) {
-			if(this.DPTable[y][this.currentCarvedWidth - 1] < this.DPTable[minY][this.currentCarvedWidth - 1]) {
-				minY=y;
+	private static boolean isDisjointFromSeams(int[] seam, int[][] seams, int numOfSeams) {
+		for (int i = 0; i < numOfSeams; i++) {
+			for (int y = 0; y < seam.length; y++) {
+				if (seams[i][y] == seam[y]) {
+					return false;
+				}
 			}
 		}
+		return true;
+	}
+	
+	private void accumulateSeamsEnergy(int[][] seams) {
+		for (int[] seam : seams) {
+			for (int y = 0; y < seam.length; y++) {
+				this.totalSeamsEnergy += this.energyTable[y][seam[y]];
+			}
+		}
+	}
+	
+	/*
+	 * Finds a seam of the (pyramidFactor times) downsampled energy, and then runs the full resolution
+	 * costs calculation only inside the band around it. Cells just outside the band are set to an infinite
+	 * cost, so the regular costs and backtracking code never leaves the band.
+	 */
+	private int[] findSeamCoarseToFine() {
+		int height = tableHeight();
+		int width = tableWidth();
+		int[] coarseSeam = findCoarseSeam();
+		int[] bandFrom = new int[height];
+		int[] bandTo = new int[height];
 		
-		for(int x = this.currentCarvedWidth-1; x > -1; --x) {
-			optimalSeam[x] = new Coordinate(x, minY);
-			minY = this.minCoordinatesDPTable[minY][x];
+		logger.log(Level.DEBUG, "Calculating the costs matrix \"m\" around the coarse seam.");
+		for (int y = 0; y < height; y++) {
+			// Between rebuilds the coarse grid is up to pyramidFactor - 1 columns wider than the table.
+			int coarseX = Math.min(coarseSeam[y / this.pyramidFactor] * this.pyramidFactor, width - 1);
+			bandFrom[y] = Math.max(coarseX - this.pyramidBandRadius, 0);
+			bandTo[y] = Math.min(coarseX + this.pyramidFactor - 1 + this.pyramidBandRadius, width - 1);
+		}
+		for (int y = 0; y < height; y++) {
+			if (y > 0) {
+				int from = Math.max(bandFrom[y] - 1, 0);
+				int to = Math.min(bandTo[y] + 1, width - 1);
+				for (int x = from; x <= to; x++) {
+					if (x < bandFrom[y-1] || x > bandTo[y-1]) {
+						this.DPTable[y-1][x] = Double.POSITIVE_INFINITY;
+					}
+				}
+			}
+			for (int x = bandFrom[y]; x <= bandTo[y]; x++) {
+				calcAndSetMinCostAtPixel(y,x);
+			}
 		}
 		
-		return optimalSeam;
+		int minX = bandFrom[height-1];
+		for (int x = bandFrom[height-1]; x <= bandTo[height-1]; x++) {
+			if (this.DPTable[height-1][x] < this.DPTable[height-1][minX]) {
+				minX = x;
+			}
+		}
+		int[] seam = backtrackSeam(minX);
+		
+		int coarseWidth = this.coarseEnergyTable[0].length;
+		for (int y = 0; y < height; y++) {
+			int coarseX = Math.min(seam[y] / this.pyramidFactor, coarseWidth - 1);
+			this.coarseEnergyTable[y / this.pyramidFactor][coarseX] -= this.energyTable[y][seam[y]];
+		}
+		return seam;
 	}
 	
-	private void storeOptimalSeam(Coordinate[] optimalSeam) {
-		int numOfSeamsFoundSoFar;
-		Coordinate[][] seamStorage;
+	/*
+	 * The coarse energy of a cell is the sum of the energies of its pyramidFactor x pyramidFactor block,
+	 * and the coarse seam is found with plain (backward) energy costs.
+	 * The coarse energy is summed only once every pyramidFactor seams: in between, findSeamCoarseToFine
+	 * subtracts the energy of every removed pixel from its cell, so the cells right of a seam drift by up
+	 * to pyramidFactor - 1 pixels, and the energy recalculated around the seams is not seen until the
+	 * next rebuild. The band radius is at least pyramidFactor, so the refined search still covers the drift.
+	 */
+	private int[] findCoarseSeam() {
+		int factor = this.pyramidFactor;
+		int height = tableHeight();
+		int width = tableWidth();
+		int coarseHeight = (height + factor - 1) / factor;
+		if (this.coarseEnergyTable == null || this.coarseEnergyTable.length != coarseHeight
+				|| this.coarseEnergyTableWidth - width >= factor) {
+			sumCoarseEnergyTable(height, width);
+		}
+		int coarseWidth = this.coarseEnergyTable[0].length;
 		
-		logger.log("Storing the optimal seam.");
-		if (this.currentMode == VERTICAL) {
-			seamStorage = this.verticalSeams;
-			numOfSeamsFoundSoFar = this.inWidth - this.currentCarvedWidth;
+		for (int coarseY = 0; coarseY < coarseHeight; coarseY++) {
+			double[] coarseCosts = this.coarseCostsTable[coarseY];
+			System.arraycopy(this.coarseEnergyTable[coarseY], 0, coarseCosts, 0, coarseWidth);
+			if (coarseY == 0) {
+				continue;
+			}
+			double[] previousCosts = this.coarseCostsTable[coarseY - 1];
+			for (int coarseX = 0; coarseX < coarseWidth; coarseX++) {
+				int minX = coarseX;
+				if (coarseX > 0 && previousCosts[coarseX - 1] < previousCosts[minX]) {
+					minX = coarseX - 1;
+				}
+				if (coarseX + 1 < coarseWidth && previousCosts[coarseX + 1] < previousCosts[minX]) {
+					minX = coarseX + 1;
+				}
+				coarseCosts[coarseX] += previousCosts[minX];
+				this.coarseMinCoordinatesTable[coarseY][coarseX] = minX;
+			}
 		}
-		else {
-			numOfSeamsFoundSoFar = this.inHeight - this.currentCarvedHeight;
-			seamStorage = this.horizontalSeams;
+		
+		int[] coarseSeam = new int[coarseHeight];
+		int minX = 0;
+		for (int coarseX = 0; coarseX < coarseWidth; coarseX++) {
+			if (this.coarseCostsTable[coarseHeight - 1][coarseX] < this.coarseCostsTable[coarseHeight - 1][minX]) {
+				minX = coarseX;
+			}
 		}
-		seamStorage[numOfSeamsFoundSoFar] = new Coordinate[optimalSeam.length];
-		for (int i = 0; i < optimalSeam.length; i++) {
-			seamStorage[numOfSeamsFoundSoFar][i] = this.originalCoordinatesTable[optimalSeam[i].Y][optimalSeam[i].X];
+		for (int coarseY = coarseHeight - 1; coarseY > -1; --coarseY) {
+			coarseSeam[coarseY] = minX;
+			minX = this.coarseMinCoordinatesTable[coarseY][minX];
 		}
+		return coarseSeam;
 	}
 	
-	private void carveSeamFromGreyscaleAndCoordinatesTable(Coordinate[] seam) {
-		this.logger.log("Removing the optimal seam from the image");
-		for (Coordinate c : seam) {
-			shiftAtCoordinate(c);
+	private void sumCoarseEnergyTable(int height, int width) {
+		int factor = this.pyramidFactor;
+		int coarseHeight = (height + factor - 1) / factor;
+		int coarseWidth = (width + factor - 1) / factor;
+		this.coarseEnergyTable = new double[coarseHeight][coarseWidth];
+		this.coarseEnergyTableWidth = width;
+		this.coarseCostsTable = new double[coarseHeight][coarseWidth];
+		this.coarseMinCoordinatesTable = new int[coarseHeight][coarseWidth];
+		for (int y = 0; y < height; y++) {
+			double[] energies = this.energyTable[y];
+			double[] coarseEnergies = this.coarseEnergyTable[y / factor];
+			for (int x = 0; x < width; x++) {
+				coarseEnergies[x / factor] += energies[x];
+			}
 		}
 	}
 	
-	private void shiftAtCoordinate(Coordinate c) {
-		if (this.currentMode == VERTICAL) {
-			shiftLeft(c);
+	private void storeOptimalSeams(int[][] optimalSeams) {
+		for (int i = 0; i < optimalSeams.length; i++) {
+			storeOptimalSeam(optimalSeams[i], i);
 		}
-		else {
-			shiftUp(c);
+	}
+	
+	/*
+	 * The seam is stored as it is, in the coordinates of the current tables (see SeamList).
+	 */
+	private void storeOptimalSeam(int[] optimalSeam, int numOfSeamsStoredInPass) {
+		logger.log(Level.DEBUG, "Storing the optimal seam.");
+		SeamList seamStorage = this.currentMode == VERTICAL ? this.verticalSeams : this.horizontalSeams;
+		this.horizontalSeamsInOrder.set(this.numOfSeamsInOrder++, this.currentMode == HORIZONTAL);
+		seamStorage.add(optimalSeam, numOfSeamsStoredInPass > 0);
+		if (this.seamPixels != null) {
+			for (int i = 0; i < optimalSeam.length; i++) {
+				int originalPixelIndex = this.outOfCoreSearch != null ? this.outOfCoreSearch.originalIndexAt(i, optimalSeam[i])
+						: this.originalIndicesTable[i][optimalSeam[i]];
+				int y = originalPixelIndex / inWidth;
+				int x = originalPixelIndex % inWidth;
+				this.seamPixels.mark(this.currentMode == VERTICAL ? y : x, this.currentMode == VERTICAL ? x : y);
+			}
 		}
 	}
 	
-	private void shiftLeft(Coordinate c){
-		int y = c.Y;
-		for (int x = c.X+1; x < this.currentCarvedWidth; x++) {
-			this.originalCoordinatesTable[y][x-1] = this.originalCoordinatesTable[y][x];
-			this.carvedGreyScaleImage[y][x-1] = this.carvedGreyScaleImage[y][x];
+	private void carveSeamFromGreyscaleAndCoordinatesTable(int[] seam) {
+		this.logger.log(Level.DEBUG, "Removing the optimal seam from the image");
+		int width = tableWidth();
+		for (int y = 0; y < seam.length; y++) {
+			shiftLeft(y, seam[y], width);
 		}
 	}
 	
-	private void shiftUp(Coordinate c) {
-		int x = c.X;
-		for (int y = c.Y+1; y < this.currentCarvedHeight; y++) {
-			this.originalCoordinatesTable[y-1][x] = this.originalCoordinatesTable[y][x];
-			this.carvedGreyScaleImage[y-1][x] = this.carvedGreyScaleImage[y][x];
+	private void shiftLeft(int y, int seamX, int width){
+		int length = width - seamX - 1;
+		System.arraycopy(this.originalIndicesTable[y], seamX + 1, this.originalIndicesTable[y], seamX, length);
+		System.arraycopy(this.carvedGreyScaleImage[y], seamX + 1, this.carvedGreyScaleImage[y], seamX, length);
+		System.arraycopy(this.energyTable[y], seamX + 1, this.energyTable[y], seamX, length);
+		System.arraycopy(this.DPTable[y], seamX + 1, this.DPTable[y], seamX, length);
+		int[] minCoordinates = this.minCoordinatesDPTable[y];
+		for (int x = seamX+1; x < width; x++) {
+			minCoordinates[x-1] = minCoordinates[x] - 1;
 		}
 	}
 	
-	private void updateCarvedProportions() {
+	/*
+	 * Removes all the seams of a pass in one compaction of every row. The costs matrix is not shifted
+	 * since it is recalculated from scratch after a multi-seam pass.
+	 */
+	private void carveDisjointSeamsFromTables(int[][] seams) {
+		this.logger.log(Level.DEBUG, () -> "Removing " + seams.length + " disjoint seams from the image");
+		int width = tableWidth();
+		int[] positions = new int[seams.length + 1];
+		for (int y = 0; y < tableHeight(); y++) {
+			collectSortedSeamPositions(seams, y, positions);
+			positions[seams.length] = width;
+			for (int i = 0; i < seams.length; i++) {
+				int from = positions[i] + 1;
+				int length = positions[i + 1] - from;
+				System.arraycopy(this.originalIndicesTable[y], from, this.originalIndicesTable[y], from - i - 1, length);
+				System.arraycopy(this.carvedGreyScaleImage[y], from, this.carvedGreyScaleImage[y], from - i - 1, length);
+				System.arraycopy(this.energyTable[y], from, this.energyTable[y], from - i - 1, length);
+			}
+		}
+	}
+	
+	private void updateCarvedProportions(int numOfSeamsRemoved) {
 		if (this.currentMode == VERTICAL) {
-			this.currentCarvedWidth--;
+			this.currentCarvedWidth -= numOfSeamsRemoved;
 		}
 		else {
-			this.currentCarvedHeight--;
+			this.currentCarvedHeight -= numOfSeamsRemoved;
 		}
 	}
 	
 	protected BufferedImage generateCarvedImage() {
-		BufferedImage carvedImage = newEmptyOutputSizedImage();
-		Coordinate originalPixelCoordinate;
+		PhaseTimer timer = CarvingMetrics.start(Phase.MATERIALIZATION);
+		PixelBuffer carvedImage = newEmptyOutputSizedBuffer();
+		int[] pixels = this.workingPixels.pixels;
+		int[] carvedPixels = carvedImage.pixels;
+		int i = 0;
 		
-		for (int y = 0; y < carvedImage.getHeight(); y++) {
-			for (int x = 0; x < carvedImage.getWidth(); x++) {
-				originalPixelCoordinate = this.originalCoordinatesTable[y][x];
-				int pixelRGB = this.workingImage.getRGB(originalPixelCoordinate.X, originalPixelCoordinate.Y);
-				carvedImage.setRGB(x, y, pixelRGB);
+		if (this.outOfCoreSearch != null) {
+			generateCarvedPixelsFromOutOfCoreTables(carvedPixels, carvedImage.width);
+		}
+		else {
+			for (int y = 0; y < carvedImage.height; y++) {
+				for (int x = 0; x < carvedImage.width; x++) {
+					int originalPixelIndex = this.tablesAreTransposed ? this.originalIndicesTable[x][y] : this.originalIndicesTable[y][x];
+					carvedPixels[i++] = pixels[originalPixelIndex];
+				}
 			}
 		}
 		
-		return carvedImage;
+		BufferedImage result = carvedImage.toImage();
+		timer.stop();
+		return result;
+	}
+	
+	/*
+	 * The out-of-core tables are read in their own row order, transposed or not.
+	 */
+	private void generateCarvedPixelsFromOutOfCoreTables(int[] carvedPixels, int carvedWidth) {
+		int[] pixels = this.workingPixels.pixels;
+		int height = tableHeight();
+		int width = tableWidth();
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			this.outOfCoreSearch.readOriginalIndices(y, row, width);
+			for (int x = 0; x < width; x++) {
+				int carvedPixelIndex = this.tablesAreTransposed ? x * carvedWidth + y : y * carvedWidth + x;
+				carvedPixels[carvedPixelIndex] = pixels[row[x]];
+			}
+		}
 	}
 	
 	public BufferedImage showSeams(boolean showVerticalSeams , int seamColorRGB) {
 		int numOfSeamsToRemove;
 		BufferedImage seamImage;
 		
-		this.initDPResources();
+		this.DPTableMode = NO_MODE;
+		this.lastRemovedSeam = null;
 		if (showVerticalSeams) {
 			this.currentMode = VERTICAL;
 			numOfSeamsToRemove = Math.abs(this.outWidth - this.inWidth);
@@ -430,26 +1299,54 @@ public class BasicSeamsCarver extends ImageProcessor {
 			this.currentMode = HORIZONTAL;
 			numOfSeamsToRemove = Math.abs(this.outHeight - this.inHeight);
 		}
-		carveSeams(numOfSeamsToRemove);
+		startProgress(numOfSeamsToRemove);
+		String cacheKey = seamCacheKey(showVerticalSeams ? "VERTICAL" : "HORIZONTAL",
+				showVerticalSeams ? numOfSeamsToRemove : 0, showVerticalSeams ? 0 : numOfSeamsToRemove);
+		if (!loadSeamsFromCache(cacheKey, showVerticalSeams ? numOfSeamsToRemove : 0, showVerticalSeams ? 0 : numOfSeamsToRemove)) {
+			carveSeams(numOfSeamsToRemove);
+			storeSeamsInCache(cacheKey);
+		}
+		PhaseTimer timer = CarvingMetrics.start(Phase.MATERIALIZATION);
 		seamImage = generateSeamImage(seamColorRGB);
+		timer.stop();
 		return seamImage;
 	}
 	
+	/*
+	 * When only seams of the shown direction were carved they are decoded line by line. Otherwise their
+	 * positions depend on the seams removed before them, and all the removals are replayed on a new
+	 * original indices table.
+	 */
 	private BufferedImage generateSeamImage(int seamColorRGB) {
-		BufferedImage seamImage = duplicateWorkingImage();
-		Coordinate[][] seamList;
-		if (this.currentMode == VERTICAL) {
-			seamList = this.verticalSeams;
+		PixelBuffer seamImage = duplicateWorkingPixels();
+		int[] pixels = seamImage.pixels;
+		boolean horizontal = this.currentMode == HORIZONTAL;
+		SeamList seamList = horizontal ? this.horizontalSeams : this.verticalSeams;
+		SeamList otherSeamList = horizontal ? this.verticalSeams : this.horizontalSeams;
+		if (otherSeamList.size() == 0) {
+			seamList.forEachLine(horizontal ? inHeight : inWidth, (line, originalPositions) -> {
+				for (int position : originalPositions) {
+					pixels[horizontal ? position * inWidth + line : line * inWidth + position] = seamColorRGB;
+				}
+			});
 		}
 		else {
-			seamList = this.horizontalSeams;
-		}
-		for (Coordinate[] seam : seamList) {
-			for (Coordinate XY : seam) {
-				seamImage.setRGB(XY.X, XY.Y, seamColorRGB);
+			int[][] originalIndicesTable = this.originalIndicesTable;
+			int currentCarvedWidth = this.currentCarvedWidth;
+			int currentCarvedHeight = this.currentCarvedHeight;
+			boolean[] isHorizontalInOrder = new boolean[this.numOfSeamsInOrder];
+			for (int i = 0; i < isHorizontalInOrder.length; i++) {
+				isHorizontalInOrder[i] = this.horizontalSeamsInOrder.get(i);
 			}
+			initOriginalIndicesTable();
+			this.currentCarvedWidth = inWidth;
+			this.currentCarvedHeight = inHeight;
+			replaySeamRemovals(isHorizontalInOrder, horizontal, originalPixelIndex -> pixels[originalPixelIndex] = seamColorRGB);
+			this.originalIndicesTable = originalIndicesTable;
+			this.currentCarvedWidth = currentCarvedWidth;
+			this.currentCarvedHeight = currentCarvedHeight;
 		}
 		
-		return seamImage;
+		return seamImage.toImage();
 	}
 }
@@ -0,0 +1,406 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import edu.cg.BasicSeamsCarver.CarvingScheme;
+import edu.cg.menu.components.ScaleSelector.ResizingOperation;
+
+/*
+ * Resizes many images without a GUI. Decoding, resizing and encoding run as separate stages connected
+ * by bounded queues: a single decoder thread, a configurable number of resizing workers, and a single
+ * encoder thread, so the ImageIO work of one image overlaps with the CPU-bound carving of the others.
+ */
+public class BatchResizer {
+	public static final String USAGE = String.join(System.lineSeparator(),
+			"Usage: Main --width W --height H --out DIR [options] (FILE | DIRECTORY)...",
+			"Options:",
+			"  --op NEAREST_NEIGHBOR | BILINEAR | AREA_AVERAGING | SEAM_CARVING   (default SEAM_CARVING)",
+			"  --scheme VERTICAL_HORIZONTAL | HORIZONTAL_VERTICAL | INTERMITTENT   (default VERTICAL_HORIZONTAL)",
+			"  --weights R,G,B   integers between 0 and 100 with a positive sum (default 1,1,1)",
+			"  --energy L1_GRADIENT | L2_GRADIENT | SOBEL   energy of the pixels for seam carving (default L2_GRADIENT)",
+			"  --backward-energy carve by the energy of the removed pixels only, without the forward energy",
+			"  --heap-budget MB  heap for the seam carving tables of an image, beyond which they are kept in",
+			"                    memory-mapped files in java.io.tmpdir (default: half the maximum heap, shared by the threads)",
+			"  --threads N       number of resizing workers (default: number of processors)",
+			"  --queue N         capacity of the queues between the stages (default 4)",
+			"  --seam-cache DIR  reuse seams computed by earlier runs, kept in DIR",
+			"  --seam-cache-size MB   size bound of the seam cache (default 1024)",
+			"  --metrics FILE    write the timings of the phases of the operations to FILE as JSON",
+			"  --verbose         print the log of every operation");
+
+	public static class Options {
+		public ResizingOperation operation = ResizingOperation.SEAM_CARVING;
+		public CarvingScheme scheme = CarvingScheme.VERTICAL_HORIZONTAL;
+		public int outWidth;
+		public int outHeight;
+		public RGBWeights rgbWeights = new RGBWeights(1, 1, 1);
+		public EnergyFunction energyFunction = StandardEnergy.L2_GRADIENT;
+		public boolean forwardEnergy = true;
+		public long heapBudgetInBytes = -1;
+		public Path outputDirectory;
+		public int numOfWorkers = Runtime.getRuntime().availableProcessors();
+		public int queueCapacity = 4;
+		public Path seamCacheDirectory;
+		public long seamCacheSizeInBytes = 1024L << 20;
+		public Path metricsFile;
+		public boolean verbose;
+		public final List<Path> inputs = new ArrayList<>();
+
+		public static Options parse(String[] args) {
+			Options options = new Options();
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (!arg.startsWith("--")) {
+					options.inputs.add(Paths.get(arg));
+					continue;
+				}
+				if (arg.equals("--verbose")) {
+					options.verbose = true;
+					continue;
+				}
+				if (arg.equals("--backward-energy")) {
+					options.forwardEnergy = false;
+					continue;
+				}
+				if (i + 1 == args.length) {
+					throw new IllegalArgumentException("Missing value for " + arg);
+				}
+				String value = args[++i];
+				switch (arg) {
+				case "--op":
+					options.operation = ResizingOperation.valueOf(value.toUpperCase(Locale.ROOT));
+					break;
+				case "--scheme":
+					options.scheme = CarvingScheme.valueOf(value.toUpperCase(Locale.ROOT));
+					break;
+				case "--width":
+					options.outWidth = Integer.parseInt(value);
+					break;
+				case "--height":
+					options.outHeight = Integer.parseInt(value);
+					break;
+				case "--weights":
+					options.rgbWeights = parseWeights(value);
+					break;
+				case "--heap-budget":
+					options.heapBudgetInBytes = Long.parseLong(value) << 20;
+					break;
+				case "--energy":
+					options.energyFunction = StandardEnergy.valueOf(value.toUpperCase(Locale.ROOT));
+					break;
+				case "--out":
+					options.outputDirectory = Paths.get(value);
+					break;
+				case "--threads":
+					options.numOfWorkers = Integer.parseInt(value);
+					break;
+				case "--queue":
+					options.queueCapacity = Integer.parseInt(value);
+					break;
+				case "--seam-cache":
+					options.seamCacheDirectory = Paths.get(value);
+					break;
+				case "--seam-cache-size":
+					options.seamCacheSizeInBytes = Long.parseLong(value) << 20;
+					break;
+				case "--metrics":
+					options.metricsFile = Paths.get(value);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + arg);
+				}
+			}
+			if (options.outWidth <= 0 || options.outHeight <= 0) {
+				throw new IllegalArgumentException("Width and height arguments must be positive");
+			}
+			if (options.outputDirectory == null) {
+				throw new IllegalArgumentException("An output directory must be given");
+			}
+			if (options.inputs.isEmpty()) {
+				throw new IllegalArgumentException("No input files were given");
+			}
+			if (options.numOfWorkers < 1 || options.queueCapacity < 1) {
+				throw new IllegalArgumentException("The number of threads and the queue capacity must be positive");
+			}
+			return options;
+		}
+
+		static RGBWeights parseWeights(String value) {
+			String[] parts = value.split(",");
+			if (parts.length != 3) {
+				throw new IllegalArgumentException("The RGB weights must be given as R,G,B");
+			}
+			int red = Integer.parseInt(parts[0].trim());
+			int green = Integer.parseInt(parts[1].trim());
+			int blue = Integer.parseInt(parts[2].trim());
+			boolean valid = red >= 0 & red <= 100 &
+					green >= 0 & green <= 100 &
+					blue >= 0 & blue <= 100 &
+					red + green + blue > 0;
+			if (!valid) {
+				throw new IllegalArgumentException("The RGB weights values must be Integers between 0 and 100," +
+						System.lineSeparator() + "and their amount must be positive.");
+			}
+			return new RGBWeights(red, green, blue);
+		}
+	}
+
+	private static class Job {
+		public final Path source;
+		public final BufferedImage image;
+		public BufferedImage result;
+
+		public Job(Path source, BufferedImage image) {
+			this.source = source;
+			this.image = image;
+		}
+	}
+
+	private static final Job END_OF_JOBS = new Job(null, null);
+
+	private final Options options;
+	private final Logger logger;
+	private final SeamCache seamCache;
+	private final AtomicInteger numOfFailures;
+
+	public BatchResizer(Options options, Logger logger) throws IOException {
+		this.options = options;
+		this.logger = logger;
+		this.seamCache = options.seamCacheDirectory == null ? null
+				: new SeamCache(options.seamCacheDirectory, options.seamCacheSizeInBytes);
+		this.numOfFailures = new AtomicInteger();
+	}
+
+	/*
+	 * Returns the number of images that could not be resized.
+	 */
+	public int run() throws IOException, InterruptedException {
+		Files.createDirectories(options.outputDirectory);
+		if (options.metricsFile != null) {
+			CarvingMetrics.setEnabled(true);
+		}
+		List<Path> allSources = listSources(options.inputs);
+		List<Path> sources = withoutOutputCollisions(allSources);
+		BlockingQueue<Job> decoded = new ArrayBlockingQueue<>(options.queueCapacity);
+		BlockingQueue<Job> resized = new ArrayBlockingQueue<>(options.queueCapacity);
+
+		Thread decoder = new Thread(() -> decode(sources, decoded), "batch-decoder");
+		List<Thread> workers = new ArrayList<>();
+		for (int i = 0; i < options.numOfWorkers; i++) {
+			workers.add(new Thread(() -> resize(decoded, resized), "batch-resizer-" + i));
+		}
+		Thread encoder = new Thread(() -> encode(resized), "batch-encoder");
+
+		decoder.start();
+		workers.forEach(Thread::start);
+		encoder.start();
+		decoder.join();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		encoder.join();
+
+		logger.log("Resized " + (allSources.size() - numOfFailures.get()) + " of " + allSources.size() + " images.");
+		if (options.metricsFile != null) {
+			Files.writeString(options.metricsFile, CarvingMetrics.toJson());
+		}
+		return numOfFailures.get();
+	}
+
+	private static List<Path> listSources(List<Path> inputs) throws IOException {
+		List<Path> sources = new ArrayList<>();
+		for (Path input : inputs) {
+			if (!Files.isDirectory(input)) {
+				sources.add(input);
+				continue;
+			}
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(input)) {
+				for (Path file : stream) {
+					if (Files.isRegularFile(file)) {
+						sources.add(file);
+					}
+				}
+			}
+		}
+		sources.sort(null);
+		return sources;
+	}
+
+	private void decode(List<Path> sources, BlockingQueue<Job> decoded) {
+		try {
+			for (Path source : sources) {
+				try {
+					BufferedImage image = ImageIO.read(source.toFile());
+					if (image == null) {
+						throw new IOException("Unsupported image format");
+					}
+					decoded.put(new Job(source, image));
+				} catch (IOException | RuntimeException e) {
+					fail(source, e);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			for (int i = 0; i < options.numOfWorkers; i++) {
+				putUninterruptibly(decoded, END_OF_JOBS);
+			}
+		}
+	}
+
+	private void resize(BlockingQueue<Job> decoded, BlockingQueue<Job> resized) {
+		try {
+			for (Job job = decoded.take(); job != END_OF_JOBS; job = decoded.take()) {
+				try {
+					job.result = resize(job.image, imageLogger(job.source));
+					resized.put(job);
+				} catch (RuntimeException e) {
+					fail(job.source, e);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			putUninterruptibly(resized, END_OF_JOBS);
+		}
+	}
+
+	private BufferedImage resize(BufferedImage image, Logger imageLogger) {
+		switch (options.operation) {
+		case NEAREST_NEIGHBOR:
+			return new ImageProcessor(imageLogger, image, options.rgbWeights, options.outWidth, options.outHeight).nearestNeighbor();
+
+		case BILINEAR:
+			return new ImageProcessor(imageLogger, image, options.rgbWeights, options.outWidth, options.outHeight).bilinear();
+
+		case AREA_AVERAGING:
+			return new ImageProcessor(imageLogger, image, options.rgbWeights, options.outWidth, options.outHeight).areaAveraging();
+
+		default: //seam carving
+			AdvancedSeamsCarver carver = new AdvancedSeamsCarver(imageLogger, image, options.outWidth, options.outHeight, options.rgbWeights);
+			carver.setSeamCache(seamCache);
+			carver.setEnergyFunction(options.energyFunction, options.forwardEnergy);
+			carver.setHeapBudget(options.heapBudgetInBytes >= 0 ? options.heapBudgetInBytes
+					: (long)(Runtime.getRuntime().maxMemory() * BasicSeamsCarver.DEFAULT_HEAP_BUDGET_FRACTION) / options.numOfWorkers);
+			return carver.resizeWithSeamCarving(options.scheme);
+		}
+	}
+
+	private void encode(BlockingQueue<Job> resized) {
+		int numOfWorkersLeft = options.numOfWorkers;
+		try {
+			while (numOfWorkersLeft > 0) {
+				Job job = resized.take();
+				if (job == END_OF_JOBS) {
+					numOfWorkersLeft--;
+					continue;
+				}
+				try {
+					File output = outputFileOf(job.source);
+					ImageIO.write(job.result, "png", output);
+					logger.log("File: " + output.getName() + " has been saved.");
+				} catch (IOException | RuntimeException e) {
+					fail(job.source, e);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/*
+	 * Inputs that only differ in their directory or their extension have the same output file. Only the
+	 * first of them is resized, the others fail instead of overwriting its result. Names are compared
+	 * ignoring case, as the output directory may be on a case-insensitive file system. An input whose
+	 * output file is itself an input (by real path, e.g. a PNG with --out set to its own directory) fails
+	 * too, rather than overwriting a source image.
+	 */
+	private List<Path> withoutOutputCollisions(List<Path> sources) {
+		Set<Path> realSources = new HashSet<>();
+		for (Path source : sources) {
+			realSources.add(realPathOf(source));
+		}
+		Map<String, Path> sourceOfOutput = new HashMap<>();
+		List<Path> accepted = new ArrayList<>();
+		for (Path source : sources) {
+			Path output = outputFileOf(source).toPath();
+			Path first = sourceOfOutput.putIfAbsent(output.toString().toLowerCase(Locale.ROOT), source);
+			if (first != null) {
+				fail(source, new IOException("its result would overwrite the result of " + first));
+			}
+			else if (Files.exists(output) && realSources.contains(realPathOf(output))) {
+				fail(source, new IOException("its result would overwrite the input " + output));
+			}
+			else {
+				accepted.add(source);
+			}
+		}
+		return accepted;
+	}
+
+	/*
+	 * A file that can not be resolved (e.g. it was just deleted) is compared by its absolute path.
+	 */
+	private static Path realPathOf(Path file) {
+		try {
+			return file.toRealPath();
+		} catch (IOException e) {
+			return file.toAbsolutePath().normalize();
+		}
+	}
+
+	private File outputFileOf(Path source) {
+		String name = source.getFileName().toString();
+		int extension = name.lastIndexOf('.');
+		if (extension > 0) {
+			name = name.substring(0, extension);
+		}
+		return options.outputDirectory.resolve(name + ".png").toFile();
+	}
+
+	private Logger imageLogger(Path source) {
+		if (!options.verbose) {
+			return Logger.SILENT;
+		}
+		String name = source.getFileName().toString();
+		return logger.withPrefix(name + ": ");
+	}
+
+	private void fail(Path source, Exception e) {
+		numOfFailures.incrementAndGet();
+		logger.log("Failed to resize " + source + ": " + e.getMessage());
+	}
+
+	private static void putUninterruptibly(BlockingQueue<Job> queue, Job job) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				queue.put(job);
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
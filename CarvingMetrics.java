@@ -0,0 +1,232 @@
+package edu.cg;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+ * Timing of the phases of the image operations and of seam carving, shared by all the threads of the
+ * process. Every phase is measured with a PhaseTimer:
+ *
+ *   PhaseTimer timer = CarvingMetrics.start(Phase.COSTS);
+ *   ...
+ *   timer.stop();
+ *
+ * When metrics are enabled the duration is added to a counter and to a latency histogram of the phase,
+ * with power-of-two buckets, which can be read with the getters or exported with toJson(). Independently
+ * of that, every phase is a CarvingPhase event of the JDK Flight Recorder when that event is enabled in
+ * a recording, so the phases show up next to GC and the other JVM events.
+ *
+ * When neither is enabled start() returns a shared timer that does nothing, so a phase costs two
+ * volatile reads.
+ */
+public final class CarvingMetrics {
+	public static enum Phase {
+		GREYSCALE_INIT("Greyscale tables of the carver"),
+		ENERGY("Energy pass"),
+		TRANSPOSITION("Transposition of the tables"),
+		COSTS("Costs (DP) pass, including the whole coarse-to-fine search"),
+		BACKTRACK("Backtracking of the seams"),
+		SEAM_STORAGE("Storage of the seams"),
+		COMPACTION("Removal of the seams from the tables"),
+		MATERIALIZATION("Generation of the result image"),
+		CHANGE_HUE("Hue change"),
+		GREYSCALE("Greyscale image"),
+		GRADIENT_MAGNITUDE("Gradient magnitude image"),
+		NEAREST_NEIGHBOR("Nearest neighbor interpolation"),
+		BILINEAR("Bilinear interpolation"),
+		AREA_AVERAGING("Area averaging");
+
+		public final String description;
+
+		private Phase(String description) {
+			this.description = description;
+		}
+	}
+
+	@Name("edu.cg.CarvingPhase")
+	@Label("Carving Phase")
+	@Category({ "Seam Carving" })
+	static class PhaseEvent extends Event {
+		@Label("Phase")
+		String phase;
+	}
+
+	public static final class PhaseTimer {
+		private static final PhaseTimer DISABLED = new PhaseTimer(null, null);
+
+		private final Phase phase;
+		private final PhaseEvent event;
+		private final long startNanos;
+
+		private PhaseTimer(Phase phase, PhaseEvent event) {
+			this.phase = phase;
+			this.event = event;
+			this.startNanos = phase == null ? 0 : System.nanoTime();
+		}
+
+		public void stop() {
+			if (this.phase == null) {
+				return;
+			}
+			if (this.event != null) {
+				this.event.commit();
+			}
+			if (enabled) {
+				STATISTICS[this.phase.ordinal()].record(System.nanoTime() - this.startNanos);
+			}
+		}
+	}
+
+	private static class Statistics {
+		private static final int NUM_OF_BUCKETS = 64;
+
+		// Bucket b counts the durations in [2^b, 2^(b+1)) nanoseconds, bucket 0 also the zero ones.
+		private final AtomicLongArray buckets = new AtomicLongArray(NUM_OF_BUCKETS);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		public void record(long nanos) {
+			this.buckets.incrementAndGet(Math.max(63 - Long.numberOfLeadingZeros(nanos), 0));
+			this.count.increment();
+			this.totalNanos.add(nanos);
+			this.maxNanos.accumulateAndGet(nanos, Math::max);
+		}
+
+		/*
+		 * The upper bound of the bucket of the given rank, and at most the largest duration.
+		 */
+		public long percentileNanos(double percentile) {
+			long count = this.count.sum();
+			if (count == 0) {
+				return 0;
+			}
+			long rank = (long)Math.ceil(percentile / 100 * count);
+			long seen = 0;
+			for (int b = 0; b < NUM_OF_BUCKETS; b++) {
+				seen += this.buckets.get(b);
+				if (seen >= rank) {
+					return Math.min(b == 62 ? Long.MAX_VALUE : 1L << (b + 1), this.maxNanos.get());
+				}
+			}
+			return this.maxNanos.get();
+		}
+
+		public void reset() {
+			for (int b = 0; b < NUM_OF_BUCKETS; b++) {
+				this.buckets.set(b, 0);
+			}
+			this.count.reset();
+			this.totalNanos.reset();
+			this.maxNanos.set(0);
+		}
+	}
+
+	private static final Statistics[] STATISTICS = new Statistics[Phase.values().length];
+	private static final EventType PHASE_EVENT_TYPE;
+	private static volatile boolean enabled;
+
+	static {
+		for (int i = 0; i < STATISTICS.length; i++) {
+			STATISTICS[i] = new Statistics();
+		}
+		PHASE_EVENT_TYPE = EventType.getEventType(PhaseEvent.class);
+	}
+
+	private CarvingMetrics() {
+	}
+
+	public static void setEnabled(boolean enabled) {
+		CarvingMetrics.enabled = enabled;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static PhaseTimer start(Phase phase) {
+		boolean recording = PHASE_EVENT_TYPE.isEnabled();
+		if (!enabled && !recording) {
+			return PhaseTimer.DISABLED;
+		}
+		PhaseEvent event = null;
+		if (recording) {
+			event = new PhaseEvent();
+			event.phase = phase.name();
+			event.begin();
+		}
+		return new PhaseTimer(phase, event);
+	}
+
+	public static long getCount(Phase phase) {
+		return STATISTICS[phase.ordinal()].count.sum();
+	}
+
+	public static long getTotalNanos(Phase phase) {
+		return STATISTICS[phase.ordinal()].totalNanos.sum();
+	}
+
+	public static long getMaxNanos(Phase phase) {
+		return STATISTICS[phase.ordinal()].maxNanos.get();
+	}
+
+	/*
+	 * An upper bound of the given percentile (0 to 100) of the durations of the phase, within a factor of two.
+	 */
+	public static long getPercentileNanos(Phase phase, double percentile) {
+		return STATISTICS[phase.ordinal()].percentileNanos(percentile);
+	}
+
+	public static void reset() {
+		for (Statistics statistics : STATISTICS) {
+			statistics.reset();
+		}
+	}
+
+	/*
+	 * The statistics of every phase that was measured, with the non-empty buckets of its histogram
+	 * given by their upper bounds.
+	 */
+	public static String toJson() {
+		StringBuilder json = new StringBuilder();
+		json.append("{\"enabled\":").append(enabled).append(",\"phases\":{");
+		boolean first = true;
+		for (Phase phase : Phase.values()) {
+			Statistics statistics = STATISTICS[phase.ordinal()];
+			long count = statistics.count.sum();
+			if (count == 0) {
+				continue;
+			}
+			json.append(first ? "" : ",").append('"').append(phase.name()).append("\":{");
+			first = false;
+			long totalNanos = statistics.totalNanos.sum();
+			json.append("\"description\":\"").append(phase.description).append('"');
+			json.append(",\"count\":").append(count);
+			json.append(",\"totalNanos\":").append(totalNanos);
+			json.append(",\"meanNanos\":").append(totalNanos / count);
+			json.append(",\"maxNanos\":").append(statistics.maxNanos.get());
+			json.append(",\"p50Nanos\":").append(statistics.percentileNanos(50));
+			json.append(",\"p90Nanos\":").append(statistics.percentileNanos(90));
+			json.append(",\"p99Nanos\":").append(statistics.percentileNanos(99));
+			json.append(",\"histogram\":[");
+			boolean firstBucket = true;
+			for (int b = 0; b < Statistics.NUM_OF_BUCKETS; b++) {
+				long bucketCount = statistics.buckets.get(b);
+				if (bucketCount > 0) {
+					json.append(firstBucket ? "" : ",").append("{\"belowNanos\":")
+							.append(b == 62 ? Long.MAX_VALUE : 1L << (b + 1)).append(",\"count\":").append(bucketCount).append('}');
+					firstBucket = false;
+				}
+			}
+			json.append("]}");
+		}
+		return json.append("}}").toString();
+	}
+}
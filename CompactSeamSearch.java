@@ -0,0 +1,221 @@
+package edu.cg;
+
+import edu.cg.CarvingMetrics.Phase;
+import edu.cg.CarvingMetrics.PhaseTimer;
+
+/*
+ * The working state of the seam search in compact form, for BasicSeamsCarver's compact mode.
+ * The greyscale image is kept as bytes, the energy of a pixel is the L1 norm of its gradient
+ * (|dx| + |dy|, computed on the fly from the greyscale image), the forward energy costs are integers of
+ * which only the current and the previous row are kept, and the backpointers are 2 bit directions packed
+ * 32 to a long. That is a little over one byte per pixel, against the 28 bytes of the greyscale, energy,
+ * costs and coordinates tables of the regular search.
+ *
+ * Like the regular tables, the rows are rows of the image for vertical seams and columns of the image
+ * for horizontal ones. The costs are recalculated for every seam.
+ */
+class CompactSeamSearch {
+	private static final int UP_LEFT = 0;
+	private static final int UP = 1;
+	private static final int UP_RIGHT = 2;
+	protected static final int DIRECTIONS_PER_WORD = 32;
+
+	protected final ParallelLinesExecutor linesExecutor;
+	private byte[][] grey;
+	private int[][] costRows;
+	private long[][] directions;
+
+	/*
+	 * For subclasses that keep the tables elsewhere, see OutOfCoreSeamSearch.
+	 */
+	protected CompactSeamSearch(ParallelLinesExecutor linesExecutor) {
+		this.linesExecutor = linesExecutor;
+	}
+
+	/*
+	 * The grey levels are read from the blue channel of the greyscale pixels.
+	 */
+	public CompactSeamSearch(int[] greyPixels, int width, int height, ParallelLinesExecutor linesExecutor) {
+		this.linesExecutor = linesExecutor;
+		this.grey = new byte[height][width];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				this.grey[y][x] = (byte)PixelBuffer.blue(greyPixels[y * width + x]);
+			}
+		}
+		allocateSearchTables(height, width);
+	}
+
+	private void allocateSearchTables(int height, int width) {
+		allocateCostRows(width);
+		this.directions = new long[height][numOfDirectionWords(width)];
+	}
+
+	protected void allocateCostRows(int width) {
+		this.costRows = new int[2][width];
+	}
+
+	protected static int numOfDirectionWords(int width) {
+		return (width + DIRECTIONS_PER_WORD - 1) / DIRECTIONS_PER_WORD;
+	}
+
+	/*
+	 * Switches between the two orientations, given the current dimensions of the tables.
+	 */
+	public void transpose(int height, int width) {
+		byte[][] transposed = new byte[width][height];
+		for (int y = 0; y < height; y++) {
+			byte[] row = this.grey[y];
+			for (int x = 0; x < width; x++) {
+				transposed[x][y] = row[x];
+			}
+		}
+		this.grey = transposed;
+		allocateSearchTables(width, height);
+	}
+
+	/*
+	 * The rows of the tables. The costs pass only asks for the grey rows around the row it calculates
+	 * and for the directions row it calculates, the backtracking only for single direction words.
+	 */
+	protected byte[] greyRow(int y) {
+		return this.grey[y];
+	}
+
+	protected int greyAt(int y, int x) {
+		return this.grey[y][x] & 0xFF;
+	}
+
+	protected long[] directionsRow(int y) {
+		return this.directions[y];
+	}
+
+	protected long directionsWord(int y, int word) {
+		return this.directions[y][word];
+	}
+
+	/*
+	 * The grey row whose differences give the vertical gradient of row y, or null for a single row.
+	 */
+	private byte[] neighbourGreyRow(int y, int height) {
+		int nextY = y + 1 < height ? y + 1 : y - 1;
+		return nextY < 0 ? null : greyRow(nextY);
+	}
+
+	private static int energy(byte[] row, byte[] neighbourRow, int x, int width) {
+		int nextX = x + 1 < width ? x + 1 : x - 1;
+		int g = row[x] & 0xFF;
+		int dx = nextX < 0 ? 0 : Math.abs((row[nextX] & 0xFF) - g);
+		int dy = neighbourRow == null ? 0 : Math.abs((neighbourRow[x] & 0xFF) - g);
+		return dx + dy;
+	}
+
+	/*
+	 * The cheapest seam of the current tables, as the position of its pixel in every row. Ties are
+	 * resolved like in the regular search: towards the right neighbour first for vertical seams and
+	 * towards the left one first for horizontal seams.
+	 */
+	public int[] findSeam(int height, int width, boolean tiesToTheRight) {
+		PhaseTimer timer = CarvingMetrics.start(Phase.COSTS);
+		calcCosts(height, width, tiesToTheRight);
+		timer.stop();
+		timer = CarvingMetrics.start(Phase.BACKTRACK);
+
+		int[] lastCosts = this.costRows[(height - 1) & 1];
+		int x = 0;
+		for (int candidate = 1; candidate < width; candidate++) {
+			if (lastCosts[candidate] < lastCosts[x]) {
+				x = candidate;
+			}
+		}
+		int[] seam = new int[height];
+		for (int y = height - 1; y > -1; --y) {
+			seam[y] = x;
+			x += directionAt(y, x) - UP;
+		}
+		timer.stop();
+		return seam;
+	}
+
+	protected void calcCosts(int height, int width, boolean tiesToTheRight) {
+		this.linesExecutor.forEachLineInOrder(height, width, DIRECTIONS_PER_WORD, (y, fromX, toX) ->
+			calcCostsAtLine(y, fromX, toX, height, width, tiesToTheRight)
+		);
+	}
+
+	/*
+	 * A chunk of a line starts at a multiple of DIRECTIONS_PER_WORD, so it owns the words of its
+	 * directions and can set them without synchronization.
+	 */
+	protected void calcCostsAtLine(int y, int fromX, int toX, int height, int width, boolean tiesToTheRight) {
+		int[] costs = this.costRows[y & 1];
+		int[] previousCosts = this.costRows[(y + 1) & 1];
+		long[] directionsRow = directionsRow(y);
+		byte[] row = greyRow(y);
+		byte[] neighbourRow = neighbourGreyRow(y, height);
+		byte[] rowAbove = y > 0 ? greyRow(y - 1) : null;
+		for (int word = fromX / DIRECTIONS_PER_WORD; word * DIRECTIONS_PER_WORD < toX; word++) {
+			directionsRow[word] = 0;
+		}
+		for (int x = fromX; x < toX; x++) {
+			int energy = energy(row, neighbourRow, x, width);
+			if (y == 0) {
+				costs[x] = energy;
+				continue;
+			}
+			boolean hasLeft = x > 0;
+			boolean hasRight = x + 1 < width;
+			int above = rowAbove[x] & 0xFF;
+			int left = hasLeft ? row[x - 1] & 0xFF : 0;
+			int right = hasRight ? row[x + 1] & 0xFF : 0;
+			int costV = hasLeft & hasRight ? Math.abs(left - right) : 0;
+			int sumV = previousCosts[x] + costV;
+			int sumL = hasLeft ? previousCosts[x - 1] + costV + Math.abs(above - left) : Integer.MAX_VALUE;
+			int sumR = hasRight ? previousCosts[x + 1] + costV + Math.abs(above - right) : Integer.MAX_VALUE;
+			int min = Math.min(Math.min(sumL, sumV), sumR);
+			int direction = UP;
+			if (tiesToTheRight) {
+				if (hasRight && min == sumR)
+					direction = UP_RIGHT;
+				else if (hasLeft && min == sumL)
+					direction = UP_LEFT;
+			}
+			else {
+				if (hasLeft && min == sumL)
+					direction = UP_LEFT;
+				else if (hasRight && min == sumR)
+					direction = UP_RIGHT;
+			}
+			costs[x] = energy + min;
+			directionsRow[x / DIRECTIONS_PER_WORD] |= (long)direction << (2 * (x % DIRECTIONS_PER_WORD));
+		}
+	}
+
+	private int directionAt(int y, int x) {
+		return (int)(directionsWord(y, x / DIRECTIONS_PER_WORD) >>> (2 * (x % DIRECTIONS_PER_WORD))) & 3;
+	}
+
+	/*
+	 * The sum of the pixel energies along the seam, before it is removed. Like energy(), but it only
+	 * reads the seam's pixels and their neighbours instead of whole rows.
+	 */
+	public long seamEnergy(int[] seam, int height, int width) {
+		long sum = 0;
+		for (int y = 0; y < seam.length; y++) {
+			int x = seam[y];
+			int nextX = x + 1 < width ? x + 1 : x - 1;
+			int nextY = y + 1 < height ? y + 1 : y - 1;
+			int g = greyAt(y, x);
+			int dx = nextX < 0 ? 0 : Math.abs(greyAt(y, nextX) - g);
+			int dy = nextY < 0 ? 0 : Math.abs(greyAt(nextY, x) - g);
+			sum += dx + dy;
+		}
+		return sum;
+	}
+
+	public void removeSeam(int[] seam, int width) {
+		for (int y = 0; y < seam.length; y++) {
+			System.arraycopy(this.grey[y], seam[y] + 1, this.grey[y], seam[y], width - seam[y] - 1);
+		}
+	}
+}
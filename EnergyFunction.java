@@ -0,0 +1,65 @@
+package edu.cg;
+
+import java.util.Random;
+
+/*
+ * The energy of a pixel of the greyscale table, which the seam search minimizes. The seam carver
+ * only calls it on its own tables: grey[y][x] for y in [0, height) and x in [0, width), which are
+ * the transposed image while horizontal seams are carved.
+ *
+ * The energy of a pixel may only depend on the grey values at most getNeighbourhoodRadius() rows
+ * and columns away from it, and on which of those lie outside the table. After a seam is removed the
+ * carver then only recalculates the energy of the pixels whose neighbourhood the seam went through.
+ *
+ * The standard implementations are in StandardEnergy.
+ */
+public interface EnergyFunction {
+	public String getName();
+
+	public int getNeighbourhoodRadius();
+
+	public double pixelEnergy(int[][] grey, int height, int width, int y, int x);
+
+	/*
+	 * energyRow[x] = pixelEnergy(grey, height, width, y, x) for x in [fromX, toX).
+	 */
+	public default void energyRow(int[][] grey, int height, int width, int y, double[] energyRow, int fromX, int toX) {
+		for (int x = fromX; x < toX; x++) {
+			energyRow[x] = pixelEnergy(grey, height, width, y, x);
+		}
+	}
+
+	/*
+	 * The time it takes to compute the energy of one pixel on this machine, in nanoseconds, for choosing
+	 * a cheaper function where throughput matters more than seam quality.
+	 */
+	public double getCostPerPixel();
+
+	/*
+	 * Times energyRow over a random greyscale table, and returns the best of several rounds so the JIT
+	 * compilation and other threads are left out of the measurement.
+	 */
+	public static double measureCostPerPixel(EnergyFunction energyFunction) {
+		final int size = 256, numOfRounds = 20;
+		int[][] grey = new int[size][size];
+		Random random = new Random(size);
+		for (int[] row : grey) {
+			for (int x = 0; x < size; x++) {
+				row[x] = random.nextInt(256);
+			}
+		}
+		double[] energyRow = new double[size];
+		long bestTime = Long.MAX_VALUE;
+		double checksum = 0;
+		for (int round = 0; round < numOfRounds; round++) {
+			long start = System.nanoTime();
+			for (int y = 0; y < size; y++) {
+				energyFunction.energyRow(grey, size, size, y, energyRow, 0, size);
+				checksum += energyRow[y];
+			}
+			bestTime = Math.min(bestTime, System.nanoTime() - start);
+		}
+		// The checksum keeps the calls from being optimized away.
+		return checksum < 0 ? Double.NaN : bestTime / (double)(size * size);
+	}
+}
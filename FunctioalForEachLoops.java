@@ -23,7 +23,26 @@ public class FunctioalForEachLoops {
 		}
 	}
 	
+	/*
+	 * Primitive counterparts of BiConsumer<Integer, Integer>, so visiting a pixel does not box its
+	 * coordinates. Rows are run concurrently, so an action may only write the pixels of its own row.
+	 */
+	@FunctionalInterface
+	public static interface PixelAction {
+		public void accept(int y, int x);
+	}
+	
+	/*
+	 * Receives the range [fromX, toX) of row y, so the loop over the row is in the action itself
+	 * and can be inlined and vectorized as a whole.
+	 */
+	@FunctionalInterface
+	public static interface RowSpanAction {
+		public void accept(int y, int fromX, int toX);
+	}
+	
 	private Deque<Params> stack;
+	ParallelLinesExecutor linesExecutor = new ParallelLinesExecutor();
 	
 	public FunctioalForEachLoops() {
 		width = height = 0;
@@ -51,6 +70,13 @@ public class FunctioalForEachLoops {
 		return height;
 	}
 	
+	/*
+	 * The executor running the primitive loops, and the parallel parts of the subclasses.
+	 */
+	public void setLinesExecutor(ParallelLinesExecutor linesExecutor) {
+		this.linesExecutor = linesExecutor;
+	}
+	
 	public final void pushForEachParameters() {
 		stack.push(new Params());
 	}
@@ -76,4 +102,28 @@ public class FunctioalForEachLoops {
 		for(int y = 0; y < height; ++y)
 			action.accept(y);
 	}
+	
+	/*
+	 * The primitive loops split the rows into stripes that run on the fork/join pool of the lines
+	 * executor (serially for small images). The bounds are passed with every call rather than kept in
+	 * the loop parameters, and the overloads without bounds use the current parameters.
+	 */
+	public final void forEachPixel(PixelAction action) {
+		forEachPixel(width, height, action);
+	}
+	
+	public final void forEachPixel(int width, int height, PixelAction action) {
+		linesExecutor.forEachLine(height, width, (y, fromX, toX) -> {
+			for(int x = fromX; x < toX; ++x)
+				action.accept(y, x);
+		});
+	}
+	
+	public final void forEachRow(RowSpanAction action) {
+		forEachRow(width, height, action);
+	}
+	
+	public final void forEachRow(int width, int height, RowSpanAction action) {
+		linesExecutor.forEachLine(height, width, action::accept);
+	}
 }
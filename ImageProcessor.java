@@ -1,13 +1,16 @@
 package edu.cg;
 
-import java.awt.Color;
 import java.awt.image.BufferedImage;
 
+import edu.cg.CarvingMetrics.Phase;
+import edu.cg.CarvingMetrics.PhaseTimer;
+
 public class ImageProcessor extends FunctioalForEachLoops {
 	private static final double sqrt2 = Math.sqrt(2.0);
 	
 	//MARK: fields
 	public BufferedImage workingImage;
+	public PixelBuffer workingPixels;
 	public int inWidth;
 	public int inHeight;
 	public int workingImageType;
@@ -15,6 +18,7 @@ public class ImageProcessor extends FunctioalForEachLoops {
 	public int outHeight;
 	public final Logger logger;
 	public final RGBWeights rgbWeights;
+	RowKernels rowKernels = RowKernels.PREFERRED;
 	
 	
 	//MARK: constructors
@@ -23,11 +27,12 @@ public class ImageProcessor extends FunctioalForEachLoops {
 		super(); //initializing for each loops...
 		
 		this.logger = logger;
-		this.workingImage = workingImage;
+		this.workingPixels = PixelBuffer.of(workingImage);
+		this.workingImage = workingPixels.toImage();
 		this.rgbWeights = rgbWeights;
 		inWidth = workingImage.getWidth();
 		inHeight = workingImage.getHeight();
-		workingImageType = workingImage.getType();
+		workingImageType = this.workingImage.getType();
 		this.outWidth = outWidth;
 		this.outHeight = outHeight;
 		setForEachInputParameters();
@@ -40,29 +45,43 @@ public class ImageProcessor extends FunctioalForEachLoops {
 				workingImage.getWidth(), workingImage.getHeight());
 	}
 	
+	/*
+	 * The vector kernels are used by default when they are available (see RowKernels), and the
+	 * results are the same either way.
+	 */
+	public void setVectorKernels(boolean useVectorKernels) {
+		this.rowKernels = useVectorKernels ? RowKernels.PREFERRED : null;
+	}
+	
 	//MARK: change picture hue - example
 	public BufferedImage changeHue() {
 		logger.log("Prepareing for hue changing...");
+		PhaseTimer timer = CarvingMetrics.start(Phase.CHANGE_HUE);
 		
 		int r = rgbWeights.redWeight;
 		int g = rgbWeights.greenWeight;
 		int b = rgbWeights.blueWeight;
 		int max = rgbWeights.maxWeight;
 		
-		BufferedImage ans = newEmptyInputSizedImage();
+		int[] in = workingPixels.pixels;
+		PixelBuffer ans = newEmptyInputSizedBuffer();
+		int[] out = ans.pixels;
 		
-		forEach((y, x) -> {
-			Color c = new Color(workingImage.getRGB(x, y));
-			int red = r*c.getRed() / max;
-			int green = g*c.getGreen() / max;
-			int blue = b*c.getBlue() / max;
-			Color color = new Color(red, green, blue);
-			ans.setRGB(x, y, color.getRGB());
+		forEachRow((y, fromX, toX) -> {
+			for (int i = y*inWidth + fromX, end = y*inWidth + toX; i < end; i++) {
+				int c = in[i];
+				int red = r*PixelBuffer.red(c) / max;
+				int green = g*PixelBuffer.green(c) / max;
+				int blue = b*PixelBuffer.blue(c) / max;
+				out[i] = PixelBuffer.opaqueRGB(red, green, blue);
+			}
 		});
 		
+		BufferedImage result = ans.toImage();
+		timer.stop();
 		logger.log("Changing hue done!");
 		
-		return ans;
+		return result;
 	}
 	
 	public final void setForEachInputParameters() {
@@ -85,11 +104,24 @@ public class ImageProcessor extends FunctioalForEachLoops {
 		return new BufferedImage(width, height, workingImageType);
 	}
 	
+	public final PixelBuffer newEmptyInputSizedBuffer() {
+		return newEmptyBuffer(inWidth, inHeight);
+	}
+	
+	public final PixelBuffer newEmptyOutputSizedBuffer() {
+		return newEmptyBuffer(outWidth, outHeight);
+	}
+	
+	public final PixelBuffer newEmptyBuffer(int width, int height) {
+		return new PixelBuffer(width, height, workingImageType);
+	}
+	
 	public final void swapWorkingImage(BufferedImage workingImage) {
-		this.workingImage = workingImage;
+		this.workingPixels = PixelBuffer.of(workingImage);
+		this.workingImage = workingPixels.toImage();
 		inWidth = workingImage.getWidth();
 		inHeight = workingImage.getHeight();
-		workingImageType = workingImage.getType();
+		workingImageType = this.workingImage.getType();
 		this.setForEachParameters(inWidth, inHeight);
 	}
 	
@@ -103,151 +135,145 @@ public class ImageProcessor extends FunctioalForEachLoops {
 	
 	public BufferedImage greyscale() {
 		logger.log("creates a greyscale image.");
+		PhaseTimer timer = CarvingMetrics.start(Phase.GREYSCALE);
+		
+		int[] in = workingPixels.pixels;
+		PixelBuffer ans = newEmptyInputSizedBuffer();
+		int[] out = ans.pixels;
 		
+		forEachRow((y, fromX, toX) -> greyscalePixels(in, out, y*inWidth + fromX, y*inWidth + toX));
+		
+		BufferedImage result = ans.toImage();
+		timer.stop();
+		return result;
+	}
+	
+	/*
+	 * out[i] = the opaque grey of in[i] for i in [from, to). in and out may be the same array.
+	 */
+	protected void greyscalePixels(int[] in, int[] out, int from, int to) {
 		int r = rgbWeights.redWeight;
 		int g = rgbWeights.greenWeight;
 		int b = rgbWeights.blueWeight;
 		int rgb = rgbWeights.weightsSum;
 		
-		BufferedImage ans = newEmptyInputSizedImage();
-		
-		forEach((y, x) -> {
-			Color c = new Color(workingImage.getRGB(x, y));
-			int mean = (r*c.getRed() + g*c.getGreen() + b*c.getBlue()) / rgb;
-			Color grey = new Color(mean, mean, mean);
-			ans.setRGB(x, y, grey.getRGB());
-		});
-		
-		return ans;
+		if (rowKernels != null) {
+			rowKernels.greyscaleRow(in, out, from, to, r, g, b, rgb);
+			return;
+		}
+		for (int i = from; i < to; i++) {
+			int c = in[i];
+			int mean = (r*PixelBuffer.red(c) + g*PixelBuffer.green(c) + b*PixelBuffer.blue(c)) / rgb;
+			out[i] = PixelBuffer.opaqueRGB(mean, mean, mean);
+		}
 	}
 
 	public BufferedImage gradientMagnitude() {
 		logger.log("calculates the gradient magnitude.");
 		if(inHeight < 2 | inWidth < 2)
 			throw new RuntimeException("Image is too small for calculating gradient magnitude.");
-		BufferedImage greyScaledImage = greyscale();
-		BufferedImage ans = newEmptyInputSizedImage();
-		forEach((y, x) -> {
-			int rgb = calculatePixelGradientMagnitude(greyScaledImage, x, y);
-			ans.setRGB(x, y, rgb);
+		int[] grey = PixelBuffer.of(greyscale()).pixels;
+		PhaseTimer timer = CarvingMetrics.start(Phase.GRADIENT_MAGNITUDE);
+		PixelBuffer ans = newEmptyInputSizedBuffer();
+		int[] out = ans.pixels;
+		forEachRow((y, fromX, toX) -> {
+			for (int x = fromX; x < toX; x++) {
+				out[y*inWidth + x] = calculatePixelGradientMagnitude(grey, inWidth, inHeight, x, y);
+			}
 		});
-		return ans;
+		BufferedImage result = ans.toImage();
+		timer.stop();
+		return result;
 	}
 	
-	private static int calculatePixelGradientMagnitude(BufferedImage greyScaledImage, int x1, int y1) {
-		int dx = calculateDx(greyScaledImage, x1, y1);
-		int dy = calculateDy(greyScaledImage, x1, y1);
+	/*
+	 * The grey levels are read from the blue channel, all the channels of a grey pixel are equal.
+	 */
+	private static int calculatePixelGradientMagnitude(int[] grey, int width, int height, int x1, int y1) {
+		int dx = calculateDx(grey, width, x1, y1);
+		int dy = calculateDy(grey, width, height, x1, y1);
 		int magnitude = Math.min((int)(Math.sqrt(dx*dx + dy*dy)), 255);
-		return new Color(magnitude, magnitude, magnitude).getRGB();
+		return PixelBuffer.opaqueRGB(magnitude, magnitude, magnitude);
 	}
 	
-	private static int calculateDx(BufferedImage greyScaledImage, int x1, int y1) {
+	private static int calculateDx(int[] grey, int width, int x1, int y1) {
 		int xDifferenceFactor = 1;
 		int x2;
-		int inWidth = greyScaledImage.getWidth();
-		if (x1 == inWidth - 1) {
+		if (x1 == width - 1) {
 			xDifferenceFactor = -1;
 		}
 		x2 = x1 + xDifferenceFactor;
-		int x1y1Color = new Color(greyScaledImage.getRGB(x1, y1)).getRed();
-		int x2y1Color = new Color(greyScaledImage.getRGB(x2, y1)).getRed();
+		int x1y1Color = PixelBuffer.blue(grey[y1*width + x1]);
+		int x2y1Color = PixelBuffer.blue(grey[y1*width + x2]);
 		return x1y1Color - x2y1Color;
 	}
 	
-	private static int calculateDy(BufferedImage greyScaledImage, int x1, int y1) {
+	private static int calculateDy(int[] grey, int width, int height, int x1, int y1) {
 		int yDifferenceFactor = 1;
 		int y2;
-		int inHeight = greyScaledImage.getHeight();
-		if (y1 == inHeight - 1) {
+		if (y1 == height - 1) {
 			yDifferenceFactor = -1;
 		}
 		y2 = y1 + yDifferenceFactor;
-		int x1y1Color = new Color(greyScaledImage.getRGB(x1, y1)).getRed();
-		int x1y2Color = new Color(greyScaledImage.getRGB(x1, y2)).getRed();
+		int x1y1Color = PixelBuffer.blue(grey[y1*width + x1]);
+		int x1y2Color = PixelBuffer.blue(grey[y2*width + x1]);
 		return x1y1Color- x1y2Color;
 	}
 	
 	public BufferedImage nearestNeighbor() {
 		logger.log("applies nearest neighbor interpolation.");
-		BufferedImage ans = newEmptyOutputSizedImage();
+		PhaseTimer timer = CarvingMetrics.start(Phase.NEAREST_NEIGHBOR);
+		int[] in = workingPixels.pixels;
+		PixelBuffer ans = newEmptyOutputSizedBuffer();
+		int[] out = ans.pixels;
+		int[] imgXs = Resampler.nearestIndices(inWidth, outWidth);
+		int[] imgYs = Resampler.nearestIndices(inHeight, outHeight);
 		
-		pushForEachParameters();
-		setForEachOutputParameters();
-		
-		forEach((y, x) -> {
-			int imgX = (int)Math.round((x*inWidth) / ((float)outWidth));
-			int imgY = (int)Math.round((y*inHeight) / ((float)outHeight));
-			imgX = Math.min(imgX,  inWidth-1);
-			imgY = Math.min(imgY, inHeight-1);
-			ans.setRGB(x, y, workingImage.getRGB(imgX, imgY));
+		forEachRow(outWidth, outHeight, (y, fromX, toX) -> {
+			int rowOffset = imgYs[y]*inWidth;
+			for (int x = fromX; x < toX; x++) {
+				out[y*outWidth + x] = in[rowOffset + imgXs[x]];
+			}
 		});
 		
-		popForEachParameters();
-		
-		return ans;
+		BufferedImage result = ans.toImage();
+		timer.stop();
+		return result;
 	}
 	
 	public BufferedImage bilinear() {
 		logger.log("applies bilinear interpolation.");
-		BufferedImage ans = newEmptyOutputSizedImage();
-		
-		pushForEachParameters();
-		setForEachOutputParameters();
-		
-		forEach((y, x) -> {
-			float imgX = (x*inWidth) / ((float)outWidth);
-			float imgY = (y*inHeight) / ((float)outHeight);
-			int x0 = (int)imgX;
-			int y0 = (int)imgY;
-			int x1 = Math.min(x0+1, inWidth-1);
-			int y1 = Math.min(y0+1, inHeight-1);
-			float dx = x1 - imgX;
-			float dy = y1 - imgY;
-			Color c1 = linearX(workingImage, y0, x0, x1, dx);
-			Color c2 = linearX(workingImage, y1, x0, x1, dx);
-			Color c = weightedMean(c1, c2, dy);
-			ans.setRGB(x, y, c.getRGB());
-		});
-		
-		popForEachParameters();
-		
-		return ans;
-	}
-	
-	private static Color linearX(BufferedImage img, int y, int x0, int x1, float dx) {
-		Color c1 = new Color(img.getRGB(x0, y));
-		Color c2 = new Color(img.getRGB(x1, y));
-		return weightedMean(c1, c2, dx);
+		PhaseTimer timer = CarvingMetrics.start(Phase.BILINEAR);
+		BufferedImage result = resample(Resampler.bilinearTaps(inWidth, outWidth), Resampler.bilinearTaps(inHeight, outHeight));
+		timer.stop();
+		return result;
 	}
 	
-	private static Color weightedMean(Color c1, Color c2, float delta) {
-		float r1 = c1.getRed();
-		float g1 = c1.getGreen();
-		float b1 = c1.getBlue();
-		
-		float r2 = c2.getRed();
-		float g2 = c2.getGreen();
-		float b2 = c2.getBlue();
-		
-		int r = weightedMean(r1, r2, delta);
-		int g = weightedMean(g1, g2, delta);
-		int b = weightedMean(b1, b2, delta);
-		
-		return new Color(r, g, b);
+	/*
+	 * Every output pixel is the average of the input area it covers. This is the alias-free choice for
+	 * large reductions, such as thumbnails.
+	 */
+	public BufferedImage areaAveraging() {
+		logger.log("applies area averaging.");
+		PhaseTimer timer = CarvingMetrics.start(Phase.AREA_AVERAGING);
+		BufferedImage result = resample(Resampler.areaTaps(inWidth, outWidth), Resampler.areaTaps(inHeight, outHeight));
+		timer.stop();
+		return result;
 	}
 	
-	private static int weightedMean(float c1, float c2, float delta) {
-		int ans = (int)(c1*delta + (1.0f - delta)*c2);
-		return Math.min(Math.max(ans, 0), 255);
+	private BufferedImage resample(Resampler.Taps columns, Resampler.Taps rows) {
+		PixelBuffer ans = newEmptyOutputSizedBuffer();
+		new Resampler(linesExecutor).resample(workingPixels, ans, columns, rows);
+		return ans.toImage();
 	}
 	
 	public final BufferedImage duplicateWorkingImage() {
-		BufferedImage output = newEmptyInputSizedImage();
-		
-		forEach((y, x) -> 
-			output.setRGB(x, y, workingImage.getRGB(x, y))
-		);
+		return duplicateWorkingPixels().toImage();
+	}
 		
+	public final PixelBuffer duplicateWorkingPixels() {
+		PixelBuffer output = newEmptyInputSizedBuffer();
+		System.arraycopy(workingPixels.pixels, 0, output.pixels, 0, output.pixels.length);
 		return output;
 	}
 }
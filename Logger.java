@@ -1,9 +1,75 @@
 package edu.cg;
 
+import java.util.function.Supplier;
+
+/*
+ * Messages have a level, and a logger may leave out the levels it is not interested in. Messages that
+ * are logged often (every seam, say) are DEBUG, and should be given as constants or as suppliers so
+ * nothing is built for them when DEBUG is disabled. log(String) logs at INFO.
+ */
 public interface Logger {
+	public static enum Level {
+		DEBUG, INFO, WARNING, ERROR
+	}
+
+	/*
+	 * Discards every message without building it.
+	 */
+	public static final Logger SILENT = new Logger() {
+		@Override
+		public void log(String s) {
+		}
+
+		@Override
+		public boolean isEnabled(Level level) {
+			return false;
+		}
+	};
+
 	public void log(String s);
 	
 	public default void log(Object obj) {
 		log(obj == null ? "null" : obj.toString());
 	}
+
+	public default boolean isEnabled(Level level) {
+		return true;
+	}
+
+	public default void log(Level level, String s) {
+		if (isEnabled(level)) {
+			log(s);
+		}
+	}
+
+	public default void log(Level level, Supplier<String> message) {
+		if (isEnabled(level)) {
+			log(level, message.get());
+		}
+	}
+
+	/*
+	 * A logger that prefixes the messages it passes on to this one, and keeps its levels.
+	 */
+	public default Logger withPrefix(String prefix) {
+		Logger logger = this;
+		return new Logger() {
+			@Override
+			public void log(String s) {
+				log(Level.INFO, s);
+			}
+
+			@Override
+			public boolean isEnabled(Level level) {
+				return logger.isEnabled(level);
+			}
+
+			@Override
+			public void log(Level level, String s) {
+				if (logger.isEnabled(level)) {
+					logger.log(level, prefix + s);
+				}
+			}
+		};
+	}
 }
@@ -1,57 +1,51 @@
 package edu.cg;
 
+import java.awt.EventQueue;
 
-import java.io.IOException;
+import edu.cg.menu.MenuWindow;
 
+/*
+ * Without arguments the application opens the menu window. With arguments it runs headless and resizes
+ * the given images in a batch, see BatchResizer.USAGE, or with --serve runs the local resizing service,
+ * see ResizeService.USAGE.
+ */
 public class Main {
 
-    private Window window = new Window();
-    private Viewer viewer = new Viewer(Window.WINDOW_INIT_WIDTH, Window.WINDOW_INIT_HEIGHT);
-    private Controller controller = new Controller(window, viewer);
-    private Timer timer = new Timer();
-
-    private void loop() {
-
-        // Run the rendering loop until the user has attempted to close
-        // the window or has pressed the ESCAPE key.
-
-        while (!window.shouldClose()) {
-            viewer.render();
-            window.refresh();
-            sync(30);
-        }
-    }
-
-    private void sync(int fps) {
-        double lastLoopTime = timer.getLastLoopTime();
-        double now = timer.getTime();
-        float targetTime = 1f / fps;
-
-        while (now - lastLoopTime < targetTime) {
-            Thread.yield();
-
-            /* This is optional if you want your game to stop consuming too much
-             * CPU but you will loose some accuracy because Thread.sleep(1)
-             * could sleep longer than 1 millisecond */
-            try {
-                Thread.sleep(10);
-            } catch (InterruptedException ex) {
-
-            }
-
-            now = timer.getTime();
-        }
-    }
-
-    public void run() {
-        window.init();
-        viewer.init();
-        controller.init();
-        loop();
-        window.dispose();
-    }
-
-    public static void main(String[] args) throws IOException{
-        new Main().run();
-    }
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0) {
+			EventQueue.invokeLater(() -> new MenuWindow().setVisible(true));
+			return;
+		}
+		if (args[0].equals("--serve")) {
+			serve(args);
+			return;
+		}
+
+		BatchResizer.Options options;
+		try {
+			options = BatchResizer.Options.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(BatchResizer.USAGE);
+			System.exit(2);
+			return;
+		}
+		int numOfFailures = new BatchResizer(options, System.err::println).run();
+		System.exit(numOfFailures == 0 ? 0 : 1);
+	}
+
+	private static void serve(String[] args) throws Exception {
+		ResizeService.Options options;
+		try {
+			options = ResizeService.Options.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(ResizeService.USAGE);
+			System.exit(2);
+			return;
+		}
+		ResizeService service = new ResizeService(options, System.err::println);
+		service.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(service::stop));
+	}
 }
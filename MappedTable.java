@@ -0,0 +1,114 @@
+package edu.cg;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * A table of fixed-size rows kept in a memory-mapped temporary file, so it can be larger than the
+ * heap: the operating system pages it in and out, and reading and writing it row after row streams
+ * through the page cache. The file is mapped in segments of whole rows (a single mapping is limited
+ * to 2GB), and it is deleted when the table is closed.
+ *
+ * Runs of a row are read into and written from arrays, single elements are accessed in place. Rows
+ * may be accessed concurrently as long as no two threads write the same part of a row.
+ */
+class MappedTable implements Closeable {
+	private static final long MAX_SEGMENT_SIZE = 1L << 30;
+
+	public final int numOfRows;
+	public final int rowSize;
+	private final FileChannel channel;
+	private final int rowsPerSegment;
+	private final ByteBuffer[] segments;
+	private final IntBuffer[] intSegments;
+	private final LongBuffer[] longSegments;
+
+	/*
+	 * rowSize is in bytes, and a multiple of 8 so rows of ints and longs are aligned.
+	 */
+	public MappedTable(Path directory, int numOfRows, int rowSize) throws IOException {
+		if (rowSize % Long.BYTES != 0 || rowSize > MAX_SEGMENT_SIZE) {
+			throw new IllegalArgumentException("Invalid row size " + rowSize);
+		}
+		this.numOfRows = numOfRows;
+		this.rowSize = rowSize;
+		this.rowsPerSegment = (int)Math.max(1, MAX_SEGMENT_SIZE / Math.max(rowSize, 1));
+		int numOfSegments = (numOfRows + rowsPerSegment - 1) / rowsPerSegment;
+		this.segments = new ByteBuffer[numOfSegments];
+		this.intSegments = new IntBuffer[numOfSegments];
+		this.longSegments = new LongBuffer[numOfSegments];
+
+		Path file = Files.createTempFile(directory, "seam-carving-", ".table");
+		this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.DELETE_ON_CLOSE);
+		try {
+			for (int i = 0; i < numOfSegments; i++) {
+				int rows = Math.min(rowsPerSegment, numOfRows - i * rowsPerSegment);
+				MappedByteBuffer segment = this.channel.map(FileChannel.MapMode.READ_WRITE,
+						(long)i * rowsPerSegment * rowSize, (long)rows * rowSize);
+				this.segments[i] = segment;
+				this.intSegments[i] = segment.asIntBuffer();
+				this.longSegments[i] = segment.asLongBuffer();
+			}
+		} catch (IOException | RuntimeException e) {
+			this.channel.close();
+			throw e;
+		}
+	}
+
+	private int offset(int row) {
+		return (row % rowsPerSegment) * rowSize;
+	}
+
+	/*
+	 * Reads values[from, from + length) from the row, starting at its element index.
+	 */
+	public void read(int row, int index, byte[] values, int from, int length) {
+		this.segments[row / rowsPerSegment].get(offset(row) + index, values, from, length);
+	}
+
+	public void write(int row, int index, byte[] values, int from, int length) {
+		this.segments[row / rowsPerSegment].put(offset(row) + index, values, from, length);
+	}
+
+	public void read(int row, int index, int[] values, int from, int length) {
+		this.intSegments[row / rowsPerSegment].get(offset(row) / Integer.BYTES + index, values, from, length);
+	}
+
+	public void write(int row, int index, int[] values, int from, int length) {
+		this.intSegments[row / rowsPerSegment].put(offset(row) / Integer.BYTES + index, values, from, length);
+	}
+
+	public void write(int row, int index, long[] values, int from, int length) {
+		this.longSegments[row / rowsPerSegment].put(offset(row) / Long.BYTES + index, values, from, length);
+	}
+
+	public byte getByte(int row, int index) {
+		return this.segments[row / rowsPerSegment].get(offset(row) + index);
+	}
+
+	public int getInt(int row, int index) {
+		return this.intSegments[row / rowsPerSegment].get(offset(row) / Integer.BYTES + index);
+	}
+
+	public long getLong(int row, int index) {
+		return this.longSegments[row / rowsPerSegment].get(offset(row) / Long.BYTES + index);
+	}
+
+	/*
+	 * Closing deletes the file, but its mapped segments stay valid (and keep their disk space) until
+	 * they are garbage collected, so tables should be reused rather than created over and over.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+}
@@ -0,0 +1,219 @@
+package edu.cg;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+/*
+ * The compact seam search with its tables in memory-mapped files (see MappedTable) instead of on the
+ * heap, for images whose tables do not fit in it. It also keeps the original indices of the pixels,
+ * which the carver keeps on the heap otherwise. Only a few rows at a time are on the heap: the three
+ * grey rows around the row whose costs are calculated, the two rows of costs and one row of
+ * directions. The costs pass reads the greyscale table row after row, removing a seam rewrites the
+ * part of every row right of it, and transposing goes through bands of rows.
+ *
+ * Every table has a spare in the other orientation: transposing writes into the spares and swaps them
+ * in, so the files are created at most twice and their mappings (which live until they are garbage
+ * collected, see MappedTable.close) do not pile up with the number of direction switches. The tables
+ * only shrink while carving, so the sizes they were created with always suffice.
+ *
+ * It finds the same seams as CompactSeamSearch.
+ */
+class OutOfCoreSeamSearch extends CompactSeamSearch implements Closeable {
+	private static final int GREY_ROWS_IN_MEMORY = 3;
+	private static final int TRANSPOSE_BAND_SIZE = 16 << 20;
+
+	private final Path directory;
+	private MappedTable grey;
+	private MappedTable originalIndices;
+	private MappedTable directions;
+	private MappedTable spareGrey;
+	private MappedTable spareIndices;
+	private MappedTable spareDirections;
+	private final byte[][] greyRows = new byte[GREY_ROWS_IN_MEMORY][];
+	private final int[] greyRowsY = new int[GREY_ROWS_IN_MEMORY];
+	private long[] directionsRow;
+	private int[] indicesRow;
+
+	/*
+	 * The tables have to be filled with initRow before the first search.
+	 */
+	public OutOfCoreSeamSearch(Path directory, int width, int height, ParallelLinesExecutor linesExecutor) throws IOException {
+		super(linesExecutor);
+		this.directory = directory;
+		try {
+			this.grey = new MappedTable(directory, height, alignedRowSize(width));
+			this.originalIndices = new MappedTable(directory, height, alignedRowSize((long)width * Integer.BYTES));
+			this.directions = new MappedTable(directory, height, numOfDirectionWords(width) * Long.BYTES);
+			allocateSearchTables(width);
+		} catch (IOException | RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+
+	private static int alignedRowSize(long rowSize) {
+		return (int)((rowSize + Long.BYTES - 1) / Long.BYTES * Long.BYTES);
+	}
+
+	private void allocateSearchTables(int width) {
+		this.directionsRow = new long[numOfDirectionWords(width)];
+		this.indicesRow = new int[width];
+		for (int i = 0; i < GREY_ROWS_IN_MEMORY; i++) {
+			this.greyRows[i] = new byte[this.grey.rowSize];
+		}
+		allocateCostRows(width);
+		forgetGreyRows();
+	}
+
+	private void forgetGreyRows() {
+		for (int i = 0; i < GREY_ROWS_IN_MEMORY; i++) {
+			this.greyRowsY[i] = -1;
+		}
+	}
+
+	/*
+	 * Sets row y of the image: the grey levels are read from the blue channel of the greyscale pixels.
+	 */
+	public void initRow(int y, int[] greyPixels, int width) {
+		byte[] row = this.greyRows[0];
+		for (int x = 0; x < width; x++) {
+			row[x] = (byte)PixelBuffer.blue(greyPixels[x]);
+			this.indicesRow[x] = y * width + x;
+		}
+		this.grey.write(y, 0, row, 0, width);
+		this.originalIndices.write(y, 0, this.indicesRow, 0, width);
+		forgetGreyRows();
+	}
+
+	/*
+	 * Rows are cached by their position modulo 3, so the rows around the current one are all kept.
+	 */
+	@Override
+	protected byte[] greyRow(int y) {
+		int slot = y % GREY_ROWS_IN_MEMORY;
+		if (this.greyRowsY[slot] != y) {
+			this.grey.read(y, 0, this.greyRows[slot], 0, this.grey.rowSize);
+			this.greyRowsY[slot] = y;
+		}
+		return this.greyRows[slot];
+	}
+
+	@Override
+	protected int greyAt(int y, int x) {
+		return this.grey.getByte(y, x) & 0xFF;
+	}
+
+	@Override
+	protected long[] directionsRow(int y) {
+		return this.directionsRow;
+	}
+
+	@Override
+	protected long directionsWord(int y, int word) {
+		return this.directions.getLong(y, word);
+	}
+
+	/*
+	 * One row at a time: the grey rows it needs are loaded first, so the chunks of the row only read
+	 * them, and its directions are written out after it.
+	 */
+	@Override
+	protected void calcCosts(int height, int width, boolean tiesToTheRight) {
+		for (int y = 0; y < height; y++) {
+			int line = y;
+			if (y > 0) {
+				greyRow(y - 1);
+			}
+			greyRow(y);
+			if (y + 1 < height) {
+				greyRow(y + 1);
+			}
+			this.linesExecutor.forEachLineInOrder(1, width, DIRECTIONS_PER_WORD, (ignored, fromX, toX) ->
+				calcCostsAtLine(line, fromX, toX, height, width, tiesToTheRight)
+			);
+			this.directions.write(y, 0, this.directionsRow, 0, numOfDirectionWords(width));
+		}
+	}
+
+	public int originalIndexAt(int y, int x) {
+		return this.originalIndices.getInt(y, x);
+	}
+
+	public void readOriginalIndices(int y, int[] row, int width) {
+		this.originalIndices.read(y, 0, row, 0, width);
+	}
+
+	/*
+	 * Only the part of each row right of the seam is moved, one column to the left.
+	 */
+	@Override
+	public void removeSeam(int[] seam, int width) {
+		byte[] row = this.greyRows[0];
+		for (int y = 0; y < seam.length; y++) {
+			int length = width - seam[y] - 1;
+			this.grey.read(y, seam[y] + 1, row, 0, length);
+			this.grey.write(y, seam[y], row, 0, length);
+			this.originalIndices.read(y, seam[y] + 1, this.indicesRow, 0, length);
+			this.originalIndices.write(y, seam[y], this.indicesRow, 0, length);
+		}
+		forgetGreyRows();
+	}
+
+	/*
+	 * A band of source rows is read at a time, and written as a run of every row of the transposed tables.
+	 */
+	@Override
+	public void transpose(int height, int width) {
+		try {
+			if (this.spareGrey == null) {
+				this.spareGrey = new MappedTable(this.directory, width, alignedRowSize(height));
+				this.spareIndices = new MappedTable(this.directory, width, alignedRowSize((long)height * Integer.BYTES));
+				this.spareDirections = new MappedTable(this.directory, width, numOfDirectionWords(height) * Long.BYTES);
+			}
+			MappedTable transposedGrey = this.spareGrey;
+			MappedTable transposedIndices = this.spareIndices;
+			int bandHeight = (int)Math.max(1, Math.min(height, TRANSPOSE_BAND_SIZE / Math.max((long)width * Integer.BYTES, 1)));
+			byte[] greyBand = new byte[bandHeight * width];
+			int[] indicesBand = new int[bandHeight * width];
+			byte[] greyRun = new byte[bandHeight];
+			int[] indicesRun = new int[bandHeight];
+			for (int fromY = 0; fromY < height; fromY += bandHeight) {
+				int bandRows = Math.min(bandHeight, height - fromY);
+				for (int i = 0; i < bandRows; i++) {
+					this.grey.read(fromY + i, 0, greyBand, i * width, width);
+					this.originalIndices.read(fromY + i, 0, indicesBand, i * width, width);
+				}
+				for (int x = 0; x < width; x++) {
+					for (int i = 0; i < bandRows; i++) {
+						greyRun[i] = greyBand[i * width + x];
+						indicesRun[i] = indicesBand[i * width + x];
+					}
+					transposedGrey.write(x, fromY, greyRun, 0, bandRows);
+					transposedIndices.write(x, fromY, indicesRun, 0, bandRows);
+				}
+			}
+			this.spareGrey = this.grey;
+			this.spareIndices = this.originalIndices;
+			this.grey = transposedGrey;
+			this.originalIndices = transposedIndices;
+			MappedTable transposedDirections = this.spareDirections;
+			this.spareDirections = this.directions;
+			this.directions = transposedDirections;
+			allocateSearchTables(height);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (MappedTable table : new MappedTable[] { this.grey, this.originalIndices, this.directions,
+				this.spareGrey, this.spareIndices, this.spareDirections }) {
+			if (table != null) {
+				table.close();
+			}
+		}
+	}
+}
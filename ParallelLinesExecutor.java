@@ -0,0 +1,134 @@
+package edu.cg;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Runs a per-pixel action over the lines (rows or columns) of a table on a fork/join pool.
+ * Lines that are shorter than two chunks, or a pool with no parallelism, are processed serially
+ * on the calling thread, so small images do not pay for the task overhead.
+ */
+public class ParallelLinesExecutor {
+	public static final int DEFAULT_MIN_CHUNK_LENGTH = 1024;
+
+	@FunctionalInterface
+	public static interface LineSpanAction {
+		public void accept(int line, int from, int to);
+	}
+
+	private final ForkJoinPool pool;
+	private final int minChunkLength;
+
+	public ParallelLinesExecutor(ForkJoinPool pool, int minChunkLength) {
+		if (minChunkLength < 1) {
+			throw new IllegalArgumentException("The minimal chunk length must be positive.");
+		}
+		this.pool = pool;
+		this.minChunkLength = minChunkLength;
+	}
+
+	public ParallelLinesExecutor() {
+		this(ForkJoinPool.commonPool(), DEFAULT_MIN_CHUNK_LENGTH);
+	}
+
+	public static ParallelLinesExecutor serial() {
+		return new ParallelLinesExecutor(null, Integer.MAX_VALUE);
+	}
+
+	private boolean isSerialFor(long numOfCells) {
+		return pool == null || pool.getParallelism() < 2 || numOfCells < 2L * minChunkLength;
+	}
+
+	/*
+	 * Every line depends on the previous one, so the lines are processed one after the other and only
+	 * the cells of a single line are split between the workers. Each line ends with a barrier.
+	 */
+	public void forEachLineInOrder(int numOfLines, int lineLength, LineSpanAction action) {
+		forEachLineInOrder(numOfLines, lineLength, 1, action);
+	}
+	
+	/*
+	 * As above, but the lines are only split at multiples of alignment, for actions that write packed
+	 * data of several cells per array element.
+	 */
+	public void forEachLineInOrder(int numOfLines, int lineLength, int alignment, LineSpanAction action) {
+		if (alignment < 1) {
+			throw new IllegalArgumentException("The alignment must be positive.");
+		}
+		if (isSerialFor(lineLength)) {
+			for (int line = 0; line < numOfLines; line++) {
+				action.accept(line, 0, lineLength);
+			}
+			return;
+		}
+		for (int line = 0; line < numOfLines; line++) {
+			pool.invoke(new LineChunk(action, line, 0, lineLength, alignment));
+		}
+	}
+
+	/*
+	 * The lines are independent of each other, so whole lines are split between the workers
+	 * without any barrier in between.
+	 */
+	public void forEachLine(int numOfLines, int lineLength, LineSpanAction action) {
+		if (isSerialFor((long)numOfLines * lineLength)) {
+			for (int line = 0; line < numOfLines; line++) {
+				action.accept(line, 0, lineLength);
+			}
+			return;
+		}
+		int minLinesPerChunk = Math.max(1, minChunkLength / Math.max(lineLength, 1));
+		pool.invoke(new LinesChunk(action, 0, numOfLines, lineLength, minLinesPerChunk));
+	}
+
+	@SuppressWarnings("serial")
+	private class LineChunk extends RecursiveAction {
+		private final LineSpanAction action;
+		private final int line, from, to, alignment;
+
+		public LineChunk(LineSpanAction action, int line, int from, int to, int alignment) {
+			this.action = action;
+			this.line = line;
+			this.from = from;
+			this.to = to;
+			this.alignment = alignment;
+		}
+
+		@Override
+		protected void compute() {
+			int mid = from + ((to - from) / 2) / alignment * alignment;
+			if (to - from < 2 * minChunkLength || mid == from) {
+				action.accept(line, from, to);
+				return;
+			}
+			invokeAll(new LineChunk(action, line, from, mid, alignment), new LineChunk(action, line, mid, to, alignment));
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static class LinesChunk extends RecursiveAction {
+		private final LineSpanAction action;
+		private final int fromLine, toLine, lineLength, minLinesPerChunk;
+
+		public LinesChunk(LineSpanAction action, int fromLine, int toLine, int lineLength, int minLinesPerChunk) {
+			this.action = action;
+			this.fromLine = fromLine;
+			this.toLine = toLine;
+			this.lineLength = lineLength;
+			this.minLinesPerChunk = minLinesPerChunk;
+		}
+
+		@Override
+		protected void compute() {
+			if (toLine - fromLine < 2 * minLinesPerChunk) {
+				for (int line = fromLine; line < toLine; line++) {
+					action.accept(line, 0, lineLength);
+				}
+				return;
+			}
+			int mid = (fromLine + toLine) >>> 1;
+			invokeAll(new LinesChunk(action, fromLine, mid, lineLength, minLinesPerChunk),
+					new LinesChunk(action, mid, toLine, lineLength, minLinesPerChunk));
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/*
+ * The pixels of a TYPE_INT_RGB or TYPE_INT_ARGB image as a single row-major int array (index y * width + x),
+ * shared with the raster of the image. Reading and writing the array directly skips the color model
+ * conversion of BufferedImage.getRGB/setRGB, and the image is available at any time without a copy.
+ *
+ * For TYPE_INT_RGB the alpha byte of the array is ignored by the image, so it may hold any value.
+ */
+public class PixelBuffer {
+	private static final int RED_MASK = 0x00FF0000;
+	private static final int GREEN_MASK = 0x0000FF00;
+	private static final int BLUE_MASK = 0x000000FF;
+	private static final int ALPHA_MASK = 0xFF000000;
+	public static final int OPAQUE = ALPHA_MASK;
+
+	public final int width;
+	public final int height;
+	public final int[] pixels;
+	private final BufferedImage image;
+
+	private PixelBuffer(BufferedImage image) {
+		this.width = image.getWidth();
+		this.height = image.getHeight();
+		this.pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+		this.image = image;
+	}
+
+	/*
+	 * A new buffer of opaque black pixels, of the given image type (TYPE_INT_RGB or TYPE_INT_ARGB).
+	 */
+	public PixelBuffer(int width, int height, int imageType) {
+		this(new BufferedImage(width, height, checkType(imageType)));
+	}
+
+	/*
+	 * Wraps the given array, without a copy, as the pixels of an image of the given type.
+	 */
+	public PixelBuffer(int width, int height, int imageType, int[] pixels) {
+		this(wrap(width, height, checkType(imageType), pixels));
+	}
+
+	private static int checkType(int imageType) {
+		if (imageType != BufferedImage.TYPE_INT_RGB & imageType != BufferedImage.TYPE_INT_ARGB) {
+			throw new IllegalArgumentException("A pixel buffer is either of TYPE_INT_RGB or of TYPE_INT_ARGB.");
+		}
+		return imageType;
+	}
+
+	private static BufferedImage wrap(int width, int height, int imageType, int[] pixels) {
+		if (pixels.length != width * height) {
+			throw new IllegalArgumentException("The pixels array does not match the dimensions.");
+		}
+		boolean hasAlpha = imageType == BufferedImage.TYPE_INT_ARGB;
+		int[] masks = hasAlpha ? new int[] { RED_MASK, GREEN_MASK, BLUE_MASK, ALPHA_MASK }
+				: new int[] { RED_MASK, GREEN_MASK, BLUE_MASK };
+		ColorModel colorModel = hasAlpha ? ColorModel.getRGBdefault()
+				: new DirectColorModel(24, RED_MASK, GREEN_MASK, BLUE_MASK);
+		WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(pixels, pixels.length), width, height, width, masks, null);
+		return new BufferedImage(colorModel, raster, false, null);
+	}
+
+	/*
+	 * The pixels of an image that is already laid out as a buffer are shared with it. Any other image is
+	 * converted to a new TYPE_INT_ARGB buffer if it has an alpha channel and to TYPE_INT_RGB otherwise.
+	 */
+	public static PixelBuffer of(BufferedImage image) {
+		if (isPixelBuffer(image)) {
+			return new PixelBuffer(image);
+		}
+		int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+		PixelBuffer buffer = new PixelBuffer(image.getWidth(), image.getHeight(), type);
+		image.getRGB(0, 0, buffer.width, buffer.height, buffer.pixels, 0, buffer.width);
+		return buffer;
+	}
+
+	/*
+	 * Subimages share the raster of their parent with a larger scanline stride, so they are not buffers.
+	 */
+	private static boolean isPixelBuffer(BufferedImage image) {
+		int type = image.getType();
+		if (type != BufferedImage.TYPE_INT_RGB & type != BufferedImage.TYPE_INT_ARGB) {
+			return false;
+		}
+		WritableRaster raster = image.getRaster();
+		return raster.getSampleModel() instanceof SinglePixelPackedSampleModel &&
+				((SinglePixelPackedSampleModel)raster.getSampleModel()).getScanlineStride() == image.getWidth() &&
+				raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0 &&
+				raster.getDataBuffer().getNumBanks() == 1 && raster.getDataBuffer().getOffset() == 0 &&
+				raster.getDataBuffer().getSize() == image.getWidth() * image.getHeight();
+	}
+
+	public BufferedImage toImage() {
+		return image;
+	}
+
+	public int getImageType() {
+		return image.getType();
+	}
+
+	public int get(int x, int y) {
+		return pixels[y * width + x];
+	}
+
+	public void set(int x, int y, int rgb) {
+		pixels[y * width + x] = rgb;
+	}
+
+	public static int red(int rgb) {
+		return (rgb >> 16) & 0xFF;
+	}
+
+	public static int green(int rgb) {
+		return (rgb >> 8) & 0xFF;
+	}
+
+	public static int blue(int rgb) {
+		return rgb & 0xFF;
+	}
+
+	public static int opaqueRGB(int red, int green, int blue) {
+		return OPAQUE | (red << 16) | (green << 8) | blue;
+	}
+}
@@ -0,0 +1,190 @@
+package edu.cg;
+
+/*
+ * Resamples packed RGB pixels with a separable kernel: a horizontal pass over the source rows into
+ * intermediate rows of the output width, followed by a vertical pass over the intermediate rows.
+ * The kernel of each dimension is precomputed once per target size as a table of taps - the first
+ * source coordinate of every output coordinate and the fixed-point weights of its neighbors - so the
+ * passes themselves are integer multiply-adds over arrays.
+ *
+ * The intermediate rows keep 6 fraction bits, and the result is rounded once at the end.
+ */
+public class Resampler {
+	public static final int WEIGHT_BITS = 14;
+	public static final int ONE = 1 << WEIGHT_BITS;
+	private static final int HORIZONTAL_SHIFT = 8;
+	private static final int VERTICAL_SHIFT = 2 * WEIGHT_BITS - HORIZONTAL_SHIFT;
+
+	/*
+	 * Output coordinate o blends the source coordinates first[o] .. first[o] + numOfTaps - 1 with the
+	 * weights weights[o * numOfTaps + k], which sum to ONE.
+	 */
+	public static class Taps {
+		public final int outSize;
+		public final int numOfTaps;
+		public final int[] first;
+		public final int[] weights;
+
+		private Taps(int outSize, int numOfTaps) {
+			this.outSize = outSize;
+			this.numOfTaps = numOfTaps;
+			this.first = new int[outSize];
+			this.weights = new int[outSize * numOfTaps];
+		}
+
+		/*
+		 * The rounding error of the fixed-point weights is added to the largest one, so they sum to ONE
+		 * exactly and flat areas keep their color.
+		 */
+		private void setWeights(int o, int first, double[] weights) {
+			this.first[o] = first;
+			int sum = 0, largest = 0;
+			for (int k = 0; k < numOfTaps; k++) {
+				int weight = (int)Math.round(weights[k] * ONE);
+				this.weights[o * numOfTaps + k] = weight;
+				sum += weight;
+				if (weights[k] > weights[largest]) {
+					largest = k;
+				}
+			}
+			this.weights[o * numOfTaps + largest] += ONE - sum;
+		}
+	}
+
+	/*
+	 * Output coordinate o samples the source at o * inSize / outSize, between its two nearest pixels.
+	 */
+	public static Taps bilinearTaps(int inSize, int outSize) {
+		Taps taps = new Taps(outSize, Math.min(2, inSize));
+		double[] weights = new double[taps.numOfTaps];
+		for (int o = 0; o < outSize; o++) {
+			float source = (o * inSize) / ((float)outSize);
+			int x0 = (int)source;
+			if (inSize == 1) {
+				weights[0] = 1.0;
+				taps.setWeights(o, 0, weights);
+			}
+			else if (x0 >= inSize - 1) {
+				weights[0] = 0.0;
+				weights[1] = 1.0;
+				taps.setWeights(o, inSize - 2, weights);
+			}
+			else {
+				float fraction = source - x0;
+				weights[0] = 1.0 - fraction;
+				weights[1] = fraction;
+				taps.setWeights(o, x0, weights);
+			}
+		}
+		return taps;
+	}
+
+	/*
+	 * Output coordinate o is the average of the source interval [o, o + 1) * inSize / outSize, where the
+	 * pixels at the ends of the interval are weighted by the part of them it covers.
+	 */
+	public static Taps areaTaps(int inSize, int outSize) {
+		double scale = inSize / (double)outSize;
+		Taps taps = new Taps(outSize, Math.min(inSize, (int)Math.ceil(scale) + 1));
+		double[] weights = new double[taps.numOfTaps];
+		for (int o = 0; o < outSize; o++) {
+			double start = o * scale;
+			double end = Math.min((o + 1) * scale, inSize);
+			int first = Math.min((int)start, inSize - taps.numOfTaps);
+			for (int k = 0; k < taps.numOfTaps; k++) {
+				int pixel = first + k;
+				double coverage = Math.min(end, pixel + 1) - Math.max(start, pixel);
+				weights[k] = Math.max(coverage, 0.0) / (end - start);
+			}
+			taps.setWeights(o, first, weights);
+		}
+		return taps;
+	}
+
+	/*
+	 * The source coordinate of every output coordinate, rounded to the nearest pixel.
+	 */
+	public static int[] nearestIndices(int inSize, int outSize) {
+		int[] indices = new int[outSize];
+		for (int o = 0; o < outSize; o++) {
+			indices[o] = Math.min(Math.round((o * inSize) / ((float)outSize)), inSize - 1);
+		}
+		return indices;
+	}
+
+	private final ParallelLinesExecutor linesExecutor;
+
+	public Resampler(ParallelLinesExecutor linesExecutor) {
+		this.linesExecutor = linesExecutor;
+	}
+
+	/*
+	 * The output pixels are opaque. Only the source rows the vertical kernel refers to are passed
+	 * through the horizontal kernel.
+	 */
+	public void resample(PixelBuffer in, PixelBuffer out, Taps columns, Taps rows) {
+		if (columns.outSize != out.width | rows.outSize != out.height) {
+			throw new IllegalArgumentException("The taps do not match the output size.");
+		}
+		int[][] intermediateRows = new int[in.height][];
+		for (int o = 0; o < rows.outSize; o++) {
+			for (int k = 0; k < rows.numOfTaps; k++) {
+				int y = rows.first[o] + k;
+				if (intermediateRows[y] == null) {
+					intermediateRows[y] = new int[3 * out.width];
+				}
+			}
+		}
+
+		linesExecutor.forEachLine(in.height, out.width, (y, fromX, toX) -> {
+			if (intermediateRows[y] != null) {
+				resampleRow(in.pixels, y * in.width, intermediateRows[y], columns, fromX, toX);
+			}
+		});
+		linesExecutor.forEachLine(out.height, out.width, (y, fromX, toX) ->
+			resampleColumns(intermediateRows, out.pixels, y * out.width, rows, y, fromX, toX)
+		);
+	}
+
+	private static void resampleRow(int[] pixels, int rowOffset, int[] intermediateRow, Taps columns, int fromX, int toX) {
+		int numOfTaps = columns.numOfTaps;
+		int[] weights = columns.weights;
+		int half = 1 << (HORIZONTAL_SHIFT - 1);
+		for (int x = fromX; x < toX; x++) {
+			int source = rowOffset + columns.first[x];
+			int red = half, green = half, blue = half;
+			for (int k = 0, w = x * numOfTaps; k < numOfTaps; k++, w++) {
+				int rgb = pixels[source + k];
+				red += PixelBuffer.red(rgb) * weights[w];
+				green += PixelBuffer.green(rgb) * weights[w];
+				blue += PixelBuffer.blue(rgb) * weights[w];
+			}
+			intermediateRow[3 * x] = red >> HORIZONTAL_SHIFT;
+			intermediateRow[3 * x + 1] = green >> HORIZONTAL_SHIFT;
+			intermediateRow[3 * x + 2] = blue >> HORIZONTAL_SHIFT;
+		}
+	}
+
+	private static void resampleColumns(int[][] intermediateRows, int[] pixels, int rowOffset, Taps rows, int y,
+			int fromX, int toX) {
+		int numOfTaps = rows.numOfTaps;
+		int first = rows.first[y];
+		int half = 1 << (VERTICAL_SHIFT - 1);
+		for (int x = fromX; x < toX; x++) {
+			int red = half, green = half, blue = half;
+			for (int k = 0, w = y * numOfTaps; k < numOfTaps; k++, w++) {
+				int[] intermediateRow = intermediateRows[first + k];
+				int weight = rows.weights[w];
+				red += intermediateRow[3 * x] * weight;
+				green += intermediateRow[3 * x + 1] * weight;
+				blue += intermediateRow[3 * x + 2] * weight;
+			}
+			pixels[rowOffset + x] = PixelBuffer.opaqueRGB(clamp(red >> VERTICAL_SHIFT), clamp(green >> VERTICAL_SHIFT),
+					clamp(blue >> VERTICAL_SHIFT));
+		}
+	}
+
+	private static int clamp(int channel) {
+		return Math.min(Math.max(channel, 0), 255);
+	}
+}
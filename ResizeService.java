@@ -0,0 +1,481 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import edu.cg.BasicSeamsCarver.CarvingScheme;
+
+/*
+ * A long-lived local HTTP service that runs the image operations, so a client does not pay for
+ * starting a JVM per image. The image is the body of a POST to /resize and the operation and its
+ * parameters are query parameters, for example:
+ *
+ *   POST /resize?op=seam_carving&width=640&height=480&scheme=intermittent&weights=1,1,1
+ *
+ * The response is the result encoded as PNG. Every request gets its own thread, which only does the
+ * blocking network and codec work; the operations themselves run on a bounded pool of CPU workers.
+ * Encoded results are kept in an in-memory LRU cache keyed by the hash of the request body together
+ * with the operation and its parameters, so identical requests are served without any computation.
+ * An identical request that arrives while the result is still being computed waits for that
+ * computation instead of starting its own.
+ */
+public class ResizeService {
+	public static final String USAGE = String.join(System.lineSeparator(),
+			"Usage: Main --serve PORT [options]",
+			"Options:",
+			"  --threads N       number of workers running the operations (default: number of processors)",
+			"  --cache-size MB   size bound of the cache of encoded results (default 256)",
+			"  --seam-cache DIR  reuse seams computed by earlier requests, kept in DIR",
+			"  --seam-cache-size MB   size bound of the seam cache (default 1024)",
+			"  --metrics         time the phases of the operations, served as JSON by GET /metrics",
+			"Requests: POST /resize?op=OP&width=W&height=H[&scheme=S][&weights=R,G,B][&energy=E][&forward=false]",
+			"  with the image as the body. OP is one of nearest_neighbor, bilinear, area_averaging, seam_carving,",
+			"  greyscale, gradient, and E one of l1_gradient, l2_gradient, sobel.",
+			"  GET /metrics returns the timings of the phases, with --metrics.");
+
+	public static enum Operation {
+		NEAREST_NEIGHBOR, BILINEAR, AREA_AVERAGING, SEAM_CARVING, GREYSCALE, GRADIENT;
+	}
+
+	public static class Options {
+		public int port;
+		public int numOfWorkers = Runtime.getRuntime().availableProcessors();
+		public long cacheSizeInBytes = 256L << 20;
+		public Path seamCacheDirectory;
+		public long seamCacheSizeInBytes = 1024L << 20;
+		public boolean metrics;
+
+		public static Options parse(String[] args) {
+			Options options = new Options();
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("--metrics")) {
+					options.metrics = true;
+					continue;
+				}
+				if (i + 1 == args.length) {
+					throw new IllegalArgumentException("Missing value for " + arg);
+				}
+				String value = args[++i];
+				switch (arg) {
+				case "--serve":
+					options.port = Integer.parseInt(value);
+					break;
+				case "--threads":
+					options.numOfWorkers = Integer.parseInt(value);
+					break;
+				case "--cache-size":
+					options.cacheSizeInBytes = Long.parseLong(value) << 20;
+					break;
+				case "--seam-cache":
+					options.seamCacheDirectory = Paths.get(value);
+					break;
+				case "--seam-cache-size":
+					options.seamCacheSizeInBytes = Long.parseLong(value) << 20;
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + arg);
+				}
+			}
+			if (options.port < 0 || options.port > 0xFFFF) {
+				throw new IllegalArgumentException("The port must be between 0 and 65535");
+			}
+			if (options.numOfWorkers < 1) {
+				throw new IllegalArgumentException("The number of threads must be positive");
+			}
+			return options;
+		}
+	}
+
+	/*
+	 * The query parameters of a request to /resize. The width and height are only given, and only
+	 * parsed, for the operations that resize; they are 0 for the others.
+	 */
+	private static class ResizeRequest {
+		public final Operation operation;
+		public final int outWidth;
+		public final int outHeight;
+		public final CarvingScheme scheme;
+		public final RGBWeights rgbWeights;
+		public final StandardEnergy energyFunction;
+		public final boolean forwardEnergy;
+
+		public ResizeRequest(Map<String, String> parameters) {
+			this.operation = valueOf(Operation.class, required(parameters, "op"));
+			if (operation != Operation.GREYSCALE & operation != Operation.GRADIENT) {
+				this.outWidth = Integer.parseInt(required(parameters, "width"));
+				this.outHeight = Integer.parseInt(required(parameters, "height"));
+				if (outWidth <= 0 || outHeight <= 0) {
+					throw new BadRequestException("Width and height arguments must be positive");
+				}
+			}
+			else {
+				this.outWidth = 0;
+				this.outHeight = 0;
+			}
+			this.scheme = valueOf(CarvingScheme.class, parameters.getOrDefault("scheme", "vertical_horizontal"));
+			this.rgbWeights = parameters.containsKey("weights")
+					? BatchResizer.Options.parseWeights(parameters.get("weights")) : new RGBWeights(1, 1, 1);
+			this.energyFunction = valueOf(StandardEnergy.class, parameters.getOrDefault("energy", "l2_gradient"));
+			this.forwardEnergy = !"false".equalsIgnoreCase(parameters.get("forward"));
+		}
+	}
+
+	/*
+	 * Thrown for requests that cannot be served, and answered with a 400 status.
+	 */
+	@SuppressWarnings("serial")
+	private static class BadRequestException extends RuntimeException {
+		public BadRequestException(String message) {
+			super(message);
+		}
+	}
+
+	/*
+	 * The least recently used results are evicted once the total size of the cached results is above
+	 * the bound. A single result that is larger than the bound is not cached at all.
+	 */
+	private static class ResultsCache {
+		private final long maxSizeInBytes;
+		private long sizeInBytes;
+		private final LinkedHashMap<String, byte[]> results = new LinkedHashMap<>(16, 0.75f, true);
+
+		public ResultsCache(long maxSizeInBytes) {
+			this.maxSizeInBytes = maxSizeInBytes;
+		}
+
+		public synchronized byte[] get(String key) {
+			return results.get(key);
+		}
+
+		public synchronized void put(String key, byte[] result) {
+			if (result.length > maxSizeInBytes) {
+				return;
+			}
+			byte[] previous = results.put(key, result);
+			sizeInBytes += result.length - (previous == null ? 0 : previous.length);
+			Iterator<byte[]> iterator = results.values().iterator();
+			while (sizeInBytes > maxSizeInBytes) {
+				sizeInBytes -= iterator.next().length;
+				iterator.remove();
+			}
+		}
+	}
+
+	private final Options options;
+	private final Logger logger;
+	private final SeamCache seamCache;
+	private final ResultsCache resultsCache;
+	private final ConcurrentHashMap<String, CompletableFuture<byte[]>> resultsInFlight = new ConcurrentHashMap<>();
+	private final ExecutorService requestsExecutor;
+	private final ExecutorService workers;
+	private HttpServer server;
+
+	public ResizeService(Options options, Logger logger) throws IOException {
+		this.options = options;
+		this.logger = logger;
+		this.seamCache = options.seamCacheDirectory == null ? null
+				: new SeamCache(options.seamCacheDirectory, options.seamCacheSizeInBytes);
+		this.resultsCache = new ResultsCache(options.cacheSizeInBytes);
+		this.requestsExecutor = newThreadPerTaskExecutor();
+		this.workers = Executors.newFixedThreadPool(options.numOfWorkers);
+	}
+
+	/*
+	 * Virtual threads are used for the requests where the runtime has them (Java 21 and later),
+	 * and otherwise a cached pool of platform threads. The build targets Java 17, which has no
+	 * virtual threads, so the factory is looked up reflectively; on Java 19 and 20 it exists only
+	 * as a preview API, hence the version check.
+	 */
+	private static ExecutorService newThreadPerTaskExecutor() {
+		if (Runtime.version().feature() < 21) {
+			return Executors.newCachedThreadPool();
+		}
+		try {
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/*
+	 * The service only listens on the loopback address.
+	 */
+	public void start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), options.port), 0);
+		server.createContext("/resize", this::handle);
+		server.createContext("/metrics", this::handleMetrics);
+		CarvingMetrics.setEnabled(options.metrics);
+		server.setExecutor(requestsExecutor);
+		server.start();
+		logger.log("Listening on http://localhost:" + getPort() + "/resize");
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	public void stop() {
+		server.stop(0);
+		requestsExecutor.shutdown();
+		workers.shutdown();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			if (!exchange.getRequestMethod().equals("POST")) {
+				exchange.getResponseHeaders().set("Allow", "POST");
+				respond(exchange, 405, "Only POST requests are supported.");
+				return;
+			}
+			ResizeRequest request;
+			try {
+				request = new ResizeRequest(parseQuery(exchange.getRequestURI().getRawQuery()));
+			} catch (IllegalArgumentException e) {
+				// Only the parameters are the client's error, an IllegalArgumentException of an operation is ours.
+				throw new BadRequestException(e.getMessage());
+			}
+			byte[] body;
+			try (InputStream in = exchange.getRequestBody()) {
+				body = in.readAllBytes();
+			}
+			String key = cacheKey(body, request);
+			byte[] result = resultsCache.get(key);
+			boolean isCached = result != null;
+			if (!isCached) {
+				CompletableFuture<byte[]> computation = new CompletableFuture<>();
+				CompletableFuture<byte[]> running = resultsInFlight.putIfAbsent(key, computation);
+				isCached = running != null;
+				result = isCached ? awaitResult(running) : computeResult(key, body, request, computation);
+			}
+			exchange.getResponseHeaders().set("Content-Type", "image/png");
+			exchange.getResponseHeaders().set("X-Cache", isCached ? "HIT" : "MISS");
+			exchange.sendResponseHeaders(200, result.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(result);
+			}
+		} catch (BadRequestException e) {
+			respond(exchange, 400, e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			respond(exchange, 503, "The service is shutting down.");
+		} catch (Exception e) {
+			logger.log("Failed to serve " + exchange.getRequestURI() + ": " + e);
+			respond(exchange, 500, String.valueOf(e.getMessage()));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/*
+	 * The result is cached before the computation is completed and removed from the results in flight,
+	 * so an identical request always finds one of them.
+	 */
+	private byte[] computeResult(String key, byte[] body, ResizeRequest request, CompletableFuture<byte[]> computation)
+			throws IOException, InterruptedException, ExecutionException {
+		try {
+			BufferedImage resized = apply(decode(body), request);
+			ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+			ImageIO.write(resized, "png", encoded);
+			byte[] result = encoded.toByteArray();
+			resultsCache.put(key, result);
+			computation.complete(result);
+			return result;
+		} catch (Throwable e) {
+			computation.completeExceptionally(e);
+			throw e;
+		} finally {
+			resultsInFlight.remove(key, computation);
+		}
+	}
+
+	/*
+	 * A request that waited for an identical one fails the way that one did.
+	 */
+	private static byte[] awaitResult(CompletableFuture<byte[]> computation) throws Exception {
+		try {
+			return computation.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception)e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	private void handleMetrics(HttpExchange exchange) throws IOException {
+		try {
+			if (!exchange.getRequestMethod().equals("GET")) {
+				exchange.getResponseHeaders().set("Allow", "GET");
+				respond(exchange, 405, "Only GET requests are supported.");
+				return;
+			}
+			byte[] json = CarvingMetrics.toJson().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, json.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(json);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+		byte[] bytes = (message + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static Map<String, String> parseQuery(String query) {
+		Map<String, String> parameters = new HashMap<>();
+		if (query == null || query.isEmpty()) {
+			return parameters;
+		}
+		for (String pair : query.split("&")) {
+			int separator = pair.indexOf('=');
+			if (separator < 0) {
+				throw new BadRequestException("Malformed query parameter " + pair);
+			}
+			parameters.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+					URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+		}
+		return parameters;
+	}
+
+	/*
+	 * The key is made of the parsed parameters, so requests that only differ in the order or the case
+	 * of their query parameters share it.
+	 */
+	private static String cacheKey(byte[] body, ResizeRequest request) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : body) {
+			hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+		}
+		return Long.toHexString(hash) + ":" + body.length + ":" + request.operation + ":" + request.outWidth
+				+ ":" + request.outHeight + ":" + request.scheme + ":" + request.rgbWeights.redWeight
+				+ "," + request.rgbWeights.greenWeight + "," + request.rgbWeights.blueWeight
+				+ ":" + request.energyFunction + ":" + request.forwardEnergy;
+	}
+
+	/*
+	 * A body that is truncated or otherwise corrupt is the client's error, like one in an unsupported format.
+	 */
+	private static BufferedImage decode(byte[] body) {
+		BufferedImage image;
+		try {
+			image = ImageIO.read(new ByteArrayInputStream(body));
+		} catch (IOException e) {
+			throw new BadRequestException("The request body is not a valid image: " + e.getMessage());
+		}
+		if (image == null) {
+			throw new BadRequestException("The request body is not a supported image.");
+		}
+		return image;
+	}
+
+	/*
+	 * The sizes the operations can not be applied to are rejected before the operation is submitted.
+	 */
+	private BufferedImage apply(BufferedImage image, ResizeRequest request)
+			throws InterruptedException, ExecutionException {
+		Operation operation = request.operation;
+		RGBWeights rgbWeights = request.rgbWeights;
+		int outWidth = image.getWidth();
+		int outHeight = image.getHeight();
+		if (operation != Operation.GREYSCALE & operation != Operation.GRADIENT) {
+			outWidth = request.outWidth;
+			outHeight = request.outHeight;
+		}
+		if (operation == Operation.GRADIENT && (image.getWidth() < 2 || image.getHeight() < 2)) {
+			throw new BadRequestException("The image is too small for calculating the gradient magnitude.");
+		}
+		if (operation == Operation.SEAM_CARVING && (Math.abs(outWidth - image.getWidth()) > image.getWidth() / 2
+				|| Math.abs(outHeight - image.getHeight()) > image.getHeight() / 2)) {
+			throw new BadRequestException("Can not apply seam carving: too many seams. The width can change by at most "
+					+ image.getWidth() / 2 + " pixels and the height by at most " + image.getHeight() / 2 + ".");
+		}
+		CarvingScheme scheme = request.scheme;
+		EnergyFunction energyFunction = request.energyFunction;
+		boolean forwardEnergy = request.forwardEnergy;
+		Logger silent = Logger.SILENT;
+		ImageProcessor processor = new ImageProcessor(silent, image, rgbWeights, outWidth, outHeight);
+		int width = outWidth, height = outHeight;
+
+		Future<BufferedImage> result = workers.submit(() -> {
+			switch (operation) {
+			case NEAREST_NEIGHBOR:
+				return processor.nearestNeighbor();
+			case BILINEAR:
+				return processor.bilinear();
+			case AREA_AVERAGING:
+				return processor.areaAveraging();
+			case GREYSCALE:
+				return processor.greyscale();
+			case GRADIENT:
+				return processor.gradientMagnitude();
+			default: //seam carving
+				AdvancedSeamsCarver carver = new AdvancedSeamsCarver(silent, image, width, height, rgbWeights);
+				carver.setSeamCache(seamCache);
+				carver.setEnergyFunction(energyFunction, forwardEnergy);
+				return carver.resizeWithSeamCarving(scheme);
+			}
+		});
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			result.cancel(true);
+			throw e;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	private static String required(Map<String, String> parameters, String name) {
+		String value = parameters.get(name);
+		if (value == null) {
+			throw new BadRequestException("Missing query parameter " + name);
+		}
+		return value;
+	}
+
+	private static <E extends Enum<E>> E valueOf(Class<E> type, String name) {
+		try {
+			return Enum.valueOf(type, name.toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw new BadRequestException("Unknown " + type.getSimpleName() + " " + name);
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package edu.cg;
+
+/*
+ * Row loops of the hottest per-pixel computations, for implementations that process several pixels
+ * per instruction. Every method must produce exactly the values of the scalar code it replaces, so
+ * the chosen seams do not depend on the implementation.
+ *
+ * The only implementation uses the incubating Vector API. It is picked at runtime when the
+ * jdk.incubator.vector module is present (java --add-modules jdk.incubator.vector), unless the
+ * system property edu.cg.disableVectorKernels is set; otherwise there are no kernels and the
+ * callers keep their scalar loops.
+ */
+public interface RowKernels {
+	public static final RowKernels PREFERRED = load();
+
+	private static RowKernels load() {
+		if (Boolean.getBoolean("edu.cg.disableVectorKernels") ||
+				!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+			return null;
+		}
+		try {
+			return (RowKernels)Class.forName("edu.cg.VectorRowKernels").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+	/*
+	 * out[i] = the opaque grey of the weighted mean of in[i], for i in [from, to).
+	 */
+	public void greyscaleRow(int[] in, int[] out, int from, int to,
+			int redWeight, int greenWeight, int blueWeight, int weightsSum);
+
+	/*
+	 * energyRow[x] = the gradient magnitude of greyRow at x, towards x + 1 and towards the same
+	 * column of neighbourGreyRow, for x in [from, to). greyRow[to] must exist.
+	 */
+	public void energyRow(int[] greyRow, int[] neighbourGreyRow, double[] energyRow, int from, int to);
+
+	/*
+	 * The forward energy costs of the pixels x in [from, to) that have both a left and a right
+	 * neighbour, and the position in the row above each of them continues. Ties go to the right
+	 * neighbour first when tiesToTheRight is set, and to the left neighbour first otherwise.
+	 */
+	public void forwardCostsRow(int[] greyRowAbove, int[] greyRow, double[] costsRowAbove, double[] energyRow,
+			double[] costsRow, int[] minXsRow, int from, int to, boolean tiesToTheRight);
+}
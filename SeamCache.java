@@ -0,0 +1,298 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+ * An opt-in on-disk cache of computed seams. Every entry is a small binary file holding the seams of one
+ * carving job in the order they were removed, and it is memory-mapped when looked up. The directory is
+ * kept under a size bound by evicting the least recently used files.
+ *
+ * File layout (big endian ints): magic, version, number of seams, and then for every seam its header
+ * (direction in the top bit, whether it shares the pass of the previous seam of its direction in the
+ * next one, length in the rest), its start and its step words (see SeamList), each as two ints.
+ */
+public class SeamCache {
+	private static final int MAGIC = 0x5345414D;
+	private static final int VERSION = 2;
+	private static final int HEADER_INTS = 3;
+	private static final int DIRECTION_BIT = 0x80000000;
+	private static final int SHARED_PASS_BIT = 0x40000000;
+	private static final String SUFFIX = ".seams";
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+	private static final long STALE_TEMPORARY_FILE_MILLIS = 60 * 60 * 1000;
+
+	public static class Entry {
+		public final SeamList verticalSeams;
+		public final SeamList horizontalSeams;
+		public final boolean[] isHorizontalInOrder;
+
+		public Entry(SeamList verticalSeams, SeamList horizontalSeams, boolean[] isHorizontalInOrder) {
+			this.verticalSeams = verticalSeams;
+			this.horizontalSeams = horizontalSeams;
+			this.isHorizontalInOrder = isHorizontalInOrder;
+		}
+	}
+
+	private final Path directory;
+	private final long maxSizeInBytes;
+
+	public SeamCache(Path directory, long maxSizeInBytes) throws IOException {
+		if (maxSizeInBytes <= 0) {
+			throw new IllegalArgumentException("The cache size must be positive.");
+		}
+		this.directory = Files.createDirectories(directory);
+		this.maxSizeInBytes = maxSizeInBytes;
+	}
+
+	/*
+	 * A 64 bit FNV-1a style hash of the dimensions and the RGB values of the image.
+	 */
+	public static long contentHash(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		long hash = 0xcbf29ce484222325L;
+		hash = (hash ^ width) * 0x100000001b3L;
+		hash = (hash ^ height) * 0x100000001b3L;
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			image.getRGB(0, y, width, 1, row, 0, width);
+			for (int rgb : row) {
+				hash = (hash ^ (rgb & 0xFFFFFF)) * 0x100000001b3L;
+			}
+		}
+		return hash;
+	}
+
+	public static long stringHash(String s) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < s.length(); i++) {
+			hash = (hash ^ s.charAt(i)) * 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	private Path fileOf(String key) {
+		return directory.resolve(key + SUFFIX);
+	}
+
+	/*
+	 * Returns null on a miss. A hit marks the entry as the most recently used one. An entry that can not
+	 * be read, or whose seams do not fit a width x height image, is deleted and counts as a miss, so a
+	 * damaged file never reaches the carver.
+	 */
+	public Entry lookup(String key, int width, int height) throws IOException {
+		Path file = fileOf(key);
+		Entry entry;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			entry = readEntry(mapped.order(ByteOrder.BIG_ENDIAN).asIntBuffer());
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+		if (entry == null || !fits(entry, width, height)) {
+			Files.deleteIfExists(file);
+			return null;
+		}
+		try {
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			// Only the eviction order depends on it, and the file may have just been evicted.
+		}
+		return entry;
+	}
+
+	private static Entry readEntry(IntBuffer ints) {
+		if (ints.remaining() < HEADER_INTS || ints.get() != MAGIC || ints.get() != VERSION) {
+			return null;
+		}
+		int numOfSeams = ints.get();
+		if (numOfSeams < 0) {
+			return null;
+		}
+		SeamList verticalSeams = new SeamList(0);
+		SeamList horizontalSeams = new SeamList(0);
+		boolean[] isHorizontalInOrder = new boolean[numOfSeams];
+		for (int i = 0; i < numOfSeams; i++) {
+			if (ints.remaining() < 2) {
+				return null;
+			}
+			int header = ints.get();
+			int length = header & ~(DIRECTION_BIT | SHARED_PASS_BIT);
+			int start = ints.get();
+			// The length is checked against the file before anything is allocated for it.
+			int numOfStepWords = SeamList.numOfStepWords(length);
+			if (ints.remaining() < 2L * numOfStepWords) {
+				return null;
+			}
+			long[] stepWords = new long[numOfStepWords];
+			for (int j = 0; j < stepWords.length; j++) {
+				stepWords[j] = ((long)ints.get() << 32) | (ints.get() & 0xFFFFFFFFL);
+			}
+			isHorizontalInOrder[i] = (header & DIRECTION_BIT) != 0;
+			(isHorizontalInOrder[i] ? horizontalSeams : verticalSeams).addEncoded(length, start, stepWords,
+					(header & SHARED_PASS_BIT) != 0);
+		}
+		return new Entry(verticalSeams, horizontalSeams, isHorizontalInOrder);
+	}
+
+	/*
+	 * Replays the shape of the carving: every seam has to span the lines left at its turn and stay
+	 * inside them, the seams of a pass have to be disjoint, and a line must never be carved away.
+	 */
+	private static boolean fits(Entry entry, int width, int height) {
+		int nextVerticalSeam = 0, nextHorizontalSeam = 0;
+		int i = 0;
+		while (i < entry.isHorizontalInOrder.length) {
+			boolean horizontal = entry.isHorizontalInOrder[i];
+			SeamList seams = horizontal ? entry.horizontalSeams : entry.verticalSeams;
+			int firstSeam = horizontal ? nextHorizontalSeam : nextVerticalSeam;
+			int endSeam = firstSeam + 1;
+			while (endSeam < seams.size() && seams.sharesPassWithPrevious(endSeam)) {
+				endSeam++;
+			}
+			int numOfLines = horizontal ? width : height;
+			int lineLength = horizontal ? height : width;
+			int passSize = endSeam - firstSeam;
+			if (passSize >= lineLength || i + passSize > entry.isHorizontalInOrder.length) {
+				return false;
+			}
+			int[][] pass = new int[passSize][];
+			for (int seam = firstSeam; seam < endSeam; seam++) {
+				if (entry.isHorizontalInOrder[i + seam - firstSeam] != horizontal || seams.getLength(seam) != numOfLines) {
+					return false;
+				}
+				pass[seam - firstSeam] = seams.positions(seam);
+			}
+			int[] positions = new int[passSize];
+			for (int line = 0; line < numOfLines; line++) {
+				for (int seam = 0; seam < passSize; seam++) {
+					positions[seam] = pass[seam][line];
+				}
+				Arrays.sort(positions);
+				if (positions[0] < 0 || positions[passSize - 1] >= lineLength) {
+					return false;
+				}
+				for (int seam = 1; seam < passSize; seam++) {
+					if (positions[seam] == positions[seam - 1]) {
+						return false;
+					}
+				}
+			}
+			if (horizontal) {
+				height -= passSize;
+				nextHorizontalSeam = endSeam;
+			}
+			else {
+				width -= passSize;
+				nextVerticalSeam = endSeam;
+			}
+			i += passSize;
+		}
+		return true;
+	}
+
+	/*
+	 * The entry is written to a temporary file first and moved into place, so concurrent readers never
+	 * see a partially written file.
+	 */
+	public void store(String key, Entry entry) throws IOException {
+		int numOfInts = HEADER_INTS;
+		for (SeamList seams : new SeamList[] { entry.verticalSeams, entry.horizontalSeams }) {
+			for (int i = 0; i < seams.size(); i++) {
+				numOfInts += 2 + 2 * SeamList.numOfStepWords(seams.getLength(i));
+			}
+		}
+		ByteBuffer bytes = ByteBuffer.allocate(4 * numOfInts).order(ByteOrder.BIG_ENDIAN);
+		IntBuffer ints = bytes.asIntBuffer();
+		ints.put(MAGIC).put(VERSION).put(entry.isHorizontalInOrder.length);
+		int nextVertical = 0, nextHorizontal = 0;
+		for (boolean isHorizontal : entry.isHorizontalInOrder) {
+			SeamList seams = isHorizontal ? entry.horizontalSeams : entry.verticalSeams;
+			int seam = isHorizontal ? nextHorizontal++ : nextVertical++;
+			int length = seams.getLength(seam);
+			ints.put(length | (isHorizontal ? DIRECTION_BIT : 0) | (seams.sharesPassWithPrevious(seam) ? SHARED_PASS_BIT : 0));
+			ints.put(seams.getStart(seam));
+			for (int j = 0; j < SeamList.numOfStepWords(length); j++) {
+				long word = seams.getStepWord(seam, j);
+				ints.put((int)(word >>> 32)).put((int)word);
+			}
+		}
+
+		Path temporary = Files.createTempFile(directory, key, TEMPORARY_SUFFIX);
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+		}
+		Files.move(temporary, fileOf(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		evictLeastRecentlyUsed();
+	}
+
+	/*
+	 * Other processes and threads share the directory, so files that are deleted while it is scanned
+	 * are skipped. Temporary files left behind by writers that died before moving them into place are
+	 * deleted once they are old enough that no writer can still be using them.
+	 */
+	private void evictLeastRecentlyUsed() throws IOException {
+		long staleBefore = System.currentTimeMillis() - STALE_TEMPORARY_FILE_MILLIS;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + TEMPORARY_SUFFIX)) {
+			for (Path file : stream) {
+				try {
+					if (Files.getLastModifiedTime(file).toMillis() < staleBefore) {
+						Files.deleteIfExists(file);
+					}
+				} catch (NoSuchFileException e) {
+					continue;
+				}
+			}
+		}
+		List<Path> files = new ArrayList<>();
+		List<BasicFileAttributes> attributes = new ArrayList<>();
+		long totalSize = 0;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for (Path file : stream) {
+				try {
+					attributes.add(Files.readAttributes(file, BasicFileAttributes.class));
+				} catch (NoSuchFileException e) {
+					continue;
+				}
+				files.add(file);
+				totalSize += attributes.get(attributes.size() - 1).size();
+			}
+		}
+		if (totalSize <= maxSizeInBytes) {
+			return;
+		}
+		List<Integer> order = new ArrayList<>();
+		for (int i = 0; i < files.size(); i++) {
+			order.add(i);
+		}
+		order.sort(Comparator.comparing(i -> attributes.get(i).lastModifiedTime()));
+		for (int i : order) {
+			if (totalSize <= maxSizeInBytes) {
+				break;
+			}
+			if (Files.deleteIfExists(files.get(i))) {
+				totalSize -= attributes.get(i).size();
+			}
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package edu.cg;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/*
+ * The seams of one direction in the order they were removed, delta encoded: a seam is the position of
+ * its pixel in the first line of the carver's tables, followed by the step to every next line (-1, 0 or
+ * +1) in 2 bits, 32 steps to a long. 1,000 seams over 4,000 lines take about 1MB.
+ *
+ * Positions are those in the tables at the time of the removal, which is what keeps the steps that
+ * small. Seams removed in the same pass (see BasicSeamsCarver.setSeamsPerPass) are positions in the same
+ * table, every other seam is a position in the table that the seams before it left. forEachLine decodes
+ * them back to positions in the original lines, one line at a time.
+ */
+public class SeamList {
+	private static final int STEPS_PER_WORD = 32;
+
+	/*
+	 * Receives the original positions of the seams in one line, in the order of the seams. The array is
+	 * reused for the next line.
+	 */
+	public static interface LineAction {
+		public void accept(int line, int[] originalPositions);
+	}
+
+	private int size;
+	private int[] starts;
+	private int[] lengths;
+	private int[] offsets;
+	private long[] steps;
+	private int numOfStepWords;
+	private final BitSet sharesPassWithPrevious = new BitSet();
+
+	public SeamList(int expectedNumOfSeams) {
+		int capacity = Math.max(expectedNumOfSeams, 1);
+		this.starts = new int[capacity];
+		this.lengths = new int[capacity];
+		this.offsets = new int[capacity];
+		this.steps = new long[capacity];
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public int getLength(int seam) {
+		return this.lengths[seam];
+	}
+
+	public boolean sharesPassWithPrevious(int seam) {
+		return this.sharesPassWithPrevious.get(seam);
+	}
+
+	public static int numOfStepWords(int length) {
+		return (Math.max(length - 1, 0) + STEPS_PER_WORD - 1) / STEPS_PER_WORD;
+	}
+
+	/*
+	 * The encoded seam: its start and the words of its steps.
+	 */
+	public int getStart(int seam) {
+		return this.starts[seam];
+	}
+
+	public long getStepWord(int seam, int word) {
+		return this.steps[this.offsets[seam] + word];
+	}
+
+	public void add(int[] positions, boolean sharesPassWithPrevious) {
+		long[] words = new long[numOfStepWords(positions.length)];
+		for (int line = 1; line < positions.length; line++) {
+			int step = positions[line] - positions[line - 1];
+			if (step < -1 || step > 1) {
+				throw new IllegalArgumentException("A seam can only move by one pixel between lines.");
+			}
+			int j = line - 1;
+			words[j / STEPS_PER_WORD] |= (long)(step + 1) << (2 * (j % STEPS_PER_WORD));
+		}
+		addEncoded(positions.length, positions.length == 0 ? 0 : positions[0], words, sharesPassWithPrevious);
+	}
+
+	public void addEncoded(int length, int start, long[] stepWords, boolean sharesPassWithPrevious) {
+		if (this.size == this.starts.length) {
+			int capacity = 2 * this.size;
+			this.starts = Arrays.copyOf(this.starts, capacity);
+			this.lengths = Arrays.copyOf(this.lengths, capacity);
+			this.offsets = Arrays.copyOf(this.offsets, capacity);
+		}
+		int numOfWords = numOfStepWords(length);
+		if (this.numOfStepWords + numOfWords > this.steps.length) {
+			this.steps = Arrays.copyOf(this.steps, Math.max(2 * this.steps.length, this.numOfStepWords + numOfWords));
+		}
+		System.arraycopy(stepWords, 0, this.steps, this.numOfStepWords, numOfWords);
+		this.starts[this.size] = start;
+		this.lengths[this.size] = length;
+		this.offsets[this.size] = this.numOfStepWords;
+		this.sharesPassWithPrevious.set(this.size, this.size > 0 && sharesPassWithPrevious);
+		this.numOfStepWords += numOfWords;
+		this.size++;
+	}
+
+	private int stepAt(int seam, int line) {
+		int j = line - 1;
+		return (int)(this.steps[this.offsets[seam] + j / STEPS_PER_WORD] >>> (2 * (j % STEPS_PER_WORD))) & 3;
+	}
+
+	/*
+	 * The positions of the seam in the tables it was removed from.
+	 */
+	public int[] positions(int seam) {
+		int[] positions = new int[this.lengths[seam]];
+		int position = this.starts[seam];
+		for (int line = 0; line < positions.length; line++) {
+			if (line > 0) {
+				position += stepAt(seam, line) - 1;
+			}
+			positions[line] = position;
+		}
+		return positions;
+	}
+
+	public long sizeInBytes() {
+		return (long)this.size * 3 * Integer.BYTES + (long)this.numOfStepWords * Long.BYTES;
+	}
+
+	/*
+	 * For seams that were all carved in this direction from the same table of lines of lineLength
+	 * pixels: every line is decoded into the positions the seams had before any of them was removed.
+	 * The position of a seam in its table is the index among the pixels of the line that the seams
+	 * before it left, and those are counted with a Fenwick tree over the original line.
+	 */
+	public void forEachLine(int lineLength, LineAction action) {
+		if (this.size == 0) {
+			return;
+		}
+		int numOfLines = this.lengths[0];
+		int[] positions = new int[this.size];
+		int[] originalPositions = new int[this.size];
+		int[] remaining = new int[lineLength + 1];
+		for (int line = 0; line < numOfLines; line++) {
+			for (int i = 1; i <= lineLength; i++) {
+				remaining[i] = i & -i;
+			}
+			int seam = 0;
+			while (seam < this.size) {
+				int passEnd = seam + 1;
+				while (passEnd < this.size && this.sharesPassWithPrevious.get(passEnd)) {
+					passEnd++;
+				}
+				for (int i = seam; i < passEnd; i++) {
+					positions[i] = line == 0 ? this.starts[i] : positions[i] + stepAt(i, line) - 1;
+					originalPositions[i] = findRemaining(remaining, positions[i]);
+				}
+				for (int i = seam; i < passEnd; i++) {
+					for (int j = originalPositions[i] + 1; j <= lineLength; j += j & -j) {
+						remaining[j]--;
+					}
+				}
+				seam = passEnd;
+			}
+			action.accept(line, originalPositions);
+		}
+	}
+
+	/*
+	 * The original position of the remaining pixel with the given index.
+	 */
+	private static int findRemaining(int[] remaining, int index) {
+		int position = 0;
+		int count = index + 1;
+		for (int bit = Integer.highestOneBit(remaining.length - 1); bit > 0; bit >>= 1) {
+			int next = position + bit;
+			if (next < remaining.length && remaining[next] < count) {
+				position = next;
+				count -= remaining[next];
+			}
+		}
+		return position;
+	}
+}
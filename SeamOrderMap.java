@@ -0,0 +1,194 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/*
+ * Records, for every pixel of an image, the step at which it is removed when vertical seams are carved
+ * from the original image, and the step at which it is removed when horizontal seams are carved.
+ * The seams removed for a width W - k are the first k seams removed for any smaller width, so after this
+ * one-time precomputation every width (or height) down to the precomputed minimum is produced by a single
+ * gather over the pixels, without running the seam search again.
+ */
+public class SeamOrderMap {
+	public static final int NEVER_REMOVED = Integer.MAX_VALUE;
+
+	private final Logger logger;
+	private final int width;
+	private final int height;
+	private final int imageType;
+	private final int[] pixels;
+	private final int[] verticalRemovalSteps;
+	private final int[] horizontalRemovalSteps;
+	private final int numOfVerticalSeams;
+	private final int numOfHorizontalSeams;
+
+	public SeamOrderMap(Logger logger, BufferedImage image, RGBWeights rgbWeights, int minWidth, int minHeight) {
+		this(logger, image, rgbWeights, minWidth, minHeight, null);
+	}
+
+	/*
+	 * The progress covers the vertical seams and then the horizontal ones.
+	 */
+	public SeamOrderMap(Logger logger, BufferedImage image, RGBWeights rgbWeights, int minWidth, int minHeight,
+			BasicSeamsCarver.ProgressListener progressListener) {
+		this.logger = logger.withPrefix("Seam order map: ");
+		this.width = image.getWidth();
+		this.height = image.getHeight();
+		if (minWidth < 1 || minWidth > width || minHeight < 1 || minHeight > height) {
+			throw new IllegalArgumentException("The minimal size must be positive and no larger than the image.");
+		}
+		PixelBuffer buffer = PixelBuffer.of(image);
+		this.imageType = buffer.getImageType();
+		this.pixels = buffer.pixels.clone();
+		this.numOfVerticalSeams = width - minWidth;
+		this.numOfHorizontalSeams = height - minHeight;
+
+		this.logger.log("Recording the removal order of " + numOfVerticalSeams + " vertical seams.");
+		this.verticalRemovalSteps = findRemovalSteps(logger, image, rgbWeights, minWidth, height, BasicSeamsCarver.VERTICAL,
+				numOfVerticalSeams, progressListener, 0);
+		this.logger.log("Recording the removal order of " + numOfHorizontalSeams + " horizontal seams.");
+		this.horizontalRemovalSteps = findRemovalSteps(logger, image, rgbWeights, width, minHeight, BasicSeamsCarver.HORIZONTAL,
+				numOfHorizontalSeams, progressListener, numOfVerticalSeams);
+		this.logger.log("Precomputation complete.");
+	}
+
+	private int[] findRemovalSteps(Logger logger, BufferedImage image, RGBWeights rgbWeights,
+			int outWidth, int outHeight, int mode, int numOfSeams,
+			BasicSeamsCarver.ProgressListener progressListener, int numOfSeamsCarvedBefore) {
+		int[] removalSteps = new int[width * height];
+		Arrays.fill(removalSteps, NEVER_REMOVED);
+		if (numOfSeams == 0) {
+			return removalSteps;
+		}
+		BasicSeamsCarver carver = new BasicSeamsCarver(logger, image, outWidth, outHeight, rgbWeights);
+		carver.currentMode = mode;
+		if (progressListener != null) {
+			int numOfSeamsToCarve = numOfVerticalSeams + numOfHorizontalSeams;
+			carver.setProgressListener((numOfSeamsCarved, numOfSeamsInPass) ->
+				progressListener.seamsCarved(numOfSeamsCarvedBefore + numOfSeamsCarved, numOfSeamsToCarve)
+			);
+			carver.startProgress(numOfSeams);
+		}
+		carver.carveSeams(numOfSeams);
+		carver.releaseSearchTables();
+		boolean vertical = mode == BasicSeamsCarver.VERTICAL;
+		SeamList seams = vertical ? carver.verticalSeams : carver.horizontalSeams;
+		seams.forEachLine(vertical ? width : height, (line, originalPositions) -> {
+			for (int step = 0; step < originalPositions.length; step++) {
+				int position = originalPositions[step];
+				removalSteps[vertical ? line * width + position : position * width + line] = step;
+			}
+		});
+		return removalSteps;
+	}
+
+	public int getMinWidth() {
+		return width - numOfVerticalSeams;
+	}
+
+	public int getMinHeight() {
+		return height - numOfHorizontalSeams;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/*
+	 * Changing a single dimension is exact: a pixel survives if it is removed after the requested number
+	 * of steps. When both dimensions are reduced, the vertical order is applied first and every column of
+	 * the result then drops its pixels with the earliest horizontal removal steps. Those steps were
+	 * recorded on the original image, so this is an approximation of carving both directions.
+	 */
+	public BufferedImage retarget(int outWidth, int outHeight) {
+		if (outWidth < getMinWidth() || outWidth > width || outHeight < getMinHeight() || outHeight > height) {
+			throw new IllegalArgumentException("The requested size is out of the precomputed range ["
+					+ getMinWidth() + ".." + width + "]x[" + getMinHeight() + ".." + height + "].");
+		}
+		int[] result;
+		if (outHeight == height) {
+			result = gatherRows(pixels, width - outWidth);
+		}
+		else if (outWidth == width) {
+			result = gatherColumns(height - outHeight);
+		}
+		else {
+			result = gatherRowsAndColumns(outWidth, outHeight);
+		}
+		return new PixelBuffer(outWidth, outHeight, imageType, result).toImage();
+	}
+
+	private int[] gatherRows(int[] values, int numOfSteps) {
+		int outWidth = width - numOfSteps;
+		int[] result = new int[outWidth * height];
+		int i = 0;
+		for (int index = 0; index < values.length; index++) {
+			if (verticalRemovalSteps[index] >= numOfSteps) {
+				result[i++] = values[index];
+			}
+		}
+		return result;
+	}
+
+	private int[] gatherColumns(int numOfSteps) {
+		int outHeight = height - numOfSteps;
+		int[] result = new int[width * outHeight];
+		int[] nextRow = new int[width];
+		for (int index = 0; index < pixels.length; index++) {
+			int x = index % width;
+			if (horizontalRemovalSteps[index] >= numOfSteps) {
+				result[nextRow[x]++ * width + x] = pixels[index];
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * The horizontal steps are below numOfHorizontalSeams (or NEVER_REMOVED), so the step of the last
+	 * pixel a column drops is found by counting its steps rather than sorting them, and a preview update
+	 * stays linear in the number of pixels.
+	 */
+	private int[] gatherRowsAndColumns(int outWidth, int outHeight) {
+		int numOfVerticalSteps = width - outWidth;
+		int numOfPixelsToDrop = height - outHeight;
+		int[] narrowPixels = gatherRows(pixels, numOfVerticalSteps);
+		int[] narrowSteps = gatherRows(horizontalRemovalSteps, numOfVerticalSteps);
+		int[] result = new int[outWidth * outHeight];
+		// The last count is of the pixels that are never removed.
+		int[] stepCounts = new int[numOfHorizontalSeams + 1];
+
+		for (int x = 0; x < outWidth; x++) {
+			Arrays.fill(stepCounts, 0);
+			for (int y = 0; y < height; y++) {
+				stepCounts[Math.min(narrowSteps[y * outWidth + x], numOfHorizontalSeams)]++;
+			}
+			int threshold = 0;
+			int numOfPixelsBelowThreshold = 0;
+			while (numOfPixelsBelowThreshold + stepCounts[threshold] < numOfPixelsToDrop) {
+				numOfPixelsBelowThreshold += stepCounts[threshold++];
+			}
+			int numOfThresholdPixelsToDrop = numOfPixelsToDrop - numOfPixelsBelowThreshold;
+			if (threshold == numOfHorizontalSeams) {
+				threshold = NEVER_REMOVED;
+			}
+			int outY = 0;
+			for (int y = 0; y < height; y++) {
+				int step = narrowSteps[y * outWidth + x];
+				if (step < threshold) {
+					continue;
+				}
+				if (step == threshold && numOfThresholdPixelsToDrop > 0) {
+					numOfThresholdPixelsToDrop--;
+					continue;
+				}
+				result[outY++ * outWidth + x] = narrowPixels[y * outWidth + x];
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,67 @@
+package edu.cg;
+
+/*
+ * Marks original pixels of the working image that belong to seams, as one bitmap row per line of the
+ * seams (image rows for vertical seams, columns for horizontal ones) with a count of the marked pixels
+ * of every line. Upscaling duplicates exactly the marked pixels, so every line has to be marked once
+ * per seam.
+ */
+class SeamPixelMap {
+	public final int numOfLines;
+	public final int lineLength;
+	private final int wordsPerLine;
+	private final long[] words;
+	private final int[] counts;
+
+	public SeamPixelMap(int numOfLines, int lineLength) {
+		this.numOfLines = numOfLines;
+		this.lineLength = lineLength;
+		this.wordsPerLine = (lineLength + Long.SIZE - 1) / Long.SIZE;
+		this.words = new long[numOfLines * this.wordsPerLine];
+		this.counts = new int[numOfLines];
+	}
+
+	public void mark(int line, int position) {
+		int word = line * this.wordsPerLine + (position >>> 6);
+		long bit = 1L << position;
+		if ((this.words[word] & bit) == 0) {
+			this.words[word] |= bit;
+			this.counts[line]++;
+		}
+	}
+
+	/*
+	 * Marks the pixels of seams that were carved in the direction of the lines from a table of
+	 * lineLength by numOfLines.
+	 */
+	public void markSeams(SeamList seams) {
+		seams.forEachLine(this.lineLength, (line, originalPositions) -> {
+			for (int position : originalPositions) {
+				mark(line, position);
+			}
+		});
+	}
+
+	public int count(int line) {
+		return this.counts[line];
+	}
+
+	/*
+	 * The first marked position of the line at or after from, or lineLength if there is none.
+	 */
+	public int nextMarked(int line, int from) {
+		if (from >= this.lineLength) {
+			return this.lineLength;
+		}
+		int lineStart = line * this.wordsPerLine;
+		int word = from >>> 6;
+		long bits = this.words[lineStart + word] & (-1L << from);
+		while (bits == 0) {
+			if (++word == this.wordsPerLine) {
+				return this.lineLength;
+			}
+			bits = this.words[lineStart + word];
+		}
+		return word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+	}
+}
@@ -0,0 +1,100 @@
+package edu.cg;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/*
+ * The energy functions that come with the seam carver, from the cheapest to the most robust. All of
+ * them are gradient magnitudes of the greyscale image:
+ * L1_GRADIENT and L2_GRADIENT take the forward differences towards the next column and the next row
+ * (backwards at the last column and row), summed or as the Euclidean norm. L2_GRADIENT is the default.
+ * SOBEL takes the Euclidean norm of the 3x3 Sobel derivatives, scaled to the range of the others,
+ * with the border pixels repeated outside the table.
+ */
+public enum StandardEnergy implements EnergyFunction {
+	L1_GRADIENT("L1 gradient") {
+		@Override
+		public double pixelEnergy(int[][] grey, int height, int width, int y, int x) {
+			int nextX = x + 1 < width ? x + 1 : x - 1;
+			int nextY = y + 1 < height ? y + 1 : y - 1;
+			int dx = nextX < 0 ? 0 : Math.abs(grey[y][nextX] - grey[y][x]);
+			int dy = nextY < 0 ? 0 : Math.abs(grey[nextY][x] - grey[y][x]);
+			return dx + dy;
+		}
+	},
+	L2_GRADIENT("L2 gradient") {
+		@Override
+		public double pixelEnergy(int[][] grey, int height, int width, int y, int x) {
+			double eVertical, eHorizontal;
+			int nextX = x, nextY = y;
+
+			if (x + 1 < width) {
+				nextX++;
+			}
+			else {
+				nextX--;
+			}
+			if (y + 1 < height) {
+				nextY++;
+			}
+			else {
+				nextY--;
+			}
+			eVertical = Math.abs(grey[y][nextX] - grey[y][x]);
+			eHorizontal = Math.abs(grey[nextY][x] - grey[y][x]);
+			eVertical = Math.pow(eVertical, 2);
+			eHorizontal = Math.pow(eHorizontal, 2);
+			return Math.sqrt(eVertical + eHorizontal);
+		}
+	},
+	SOBEL("Sobel") {
+		@Override
+		public double pixelEnergy(int[][] grey, int height, int width, int y, int x) {
+			int[] above = grey[Math.max(y - 1, 0)];
+			int[] row = grey[y];
+			int[] below = grey[Math.min(y + 1, height - 1)];
+			int left = Math.max(x - 1, 0);
+			int right = Math.min(x + 1, width - 1);
+			int dx = (above[right] + 2 * row[right] + below[right]) - (above[left] + 2 * row[left] + below[left]);
+			int dy = (below[left] + 2 * below[x] + below[right]) - (above[left] + 2 * above[x] + above[right]);
+			return Math.sqrt(dx * dx + dy * dy) / 4;
+		}
+	};
+
+	public final String description;
+	private volatile double costPerPixel = Double.NaN;
+
+	private StandardEnergy(String description) {
+		this.description = description;
+	}
+
+	@Override
+	public String getName() {
+		return name();
+	}
+
+	@Override
+	public int getNeighbourhoodRadius() {
+		return 1;
+	}
+
+	/*
+	 * Measured once, on the first call.
+	 */
+	@Override
+	public double getCostPerPixel() {
+		if (Double.isNaN(this.costPerPixel)) {
+			this.costPerPixel = EnergyFunction.measureCostPerPixel(this);
+		}
+		return this.costPerPixel;
+	}
+
+	/*
+	 * The standard energy functions, from the cheapest to the most expensive on this machine.
+	 */
+	public static StandardEnergy[] rankedByCost() {
+		StandardEnergy[] ranked = values();
+		Arrays.sort(ranked, Comparator.comparingDouble(StandardEnergy::getCostPerPixel));
+		return ranked;
+	}
+}
@@ -0,0 +1,136 @@
+package edu.cg;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * RowKernels on the Vector API, loaded by RowKernels only when the jdk.incubator.vector module is
+ * present. The double computations use the preferred species, with int vectors of the same number of
+ * lanes; the lanes left over at the end of a row are computed by the scalar formulas.
+ */
+class VectorRowKernels implements RowKernels {
+	private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Integer> HALF_INTS =
+			VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+	private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+	private static final int MAX_EXACT_FLOAT_INT = 1 << 24;
+
+	/*
+	 * The weighted sum is divided in float, which truncates to the integer quotient as long as the sum
+	 * is exactly representable, so other weights are left to the scalar loop.
+	 */
+	@Override
+	public void greyscaleRow(int[] in, int[] out, int from, int to,
+			int redWeight, int greenWeight, int blueWeight, int weightsSum) {
+		int i = from;
+		boolean exact = redWeight >= 0 & greenWeight >= 0 & blueWeight >= 0 & weightsSum > 0 &&
+				(long)weightsSum * 255 < MAX_EXACT_FLOAT_INT;
+		if (exact) {
+			float divisor = weightsSum;
+			for (int upper = from + INTS.loopBound(to - from); i < upper; i += INTS.length()) {
+				IntVector c = IntVector.fromArray(INTS, in, i);
+				IntVector red = c.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+				IntVector green = c.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+				IntVector blue = c.and(0xFF);
+				IntVector sum = red.mul(redWeight).add(green.mul(greenWeight)).add(blue.mul(blueWeight));
+				FloatVector quotient = ((FloatVector)sum.convertShape(VectorOperators.I2F, FLOATS, 0)).div(divisor);
+				IntVector mean = (IntVector)quotient.convertShape(VectorOperators.F2I, INTS, 0);
+				mean.lanewise(VectorOperators.LSHL, 16)
+						.or(mean.lanewise(VectorOperators.LSHL, 8))
+						.or(mean)
+						.or(PixelBuffer.OPAQUE)
+						.intoArray(out, i);
+			}
+		}
+		for (; i < to; i++) {
+			int c = in[i];
+			int mean = (redWeight*PixelBuffer.red(c) + greenWeight*PixelBuffer.green(c) + blueWeight*PixelBuffer.blue(c)) / weightsSum;
+			out[i] = PixelBuffer.opaqueRGB(mean, mean, mean);
+		}
+	}
+
+	@Override
+	public void energyRow(int[] greyRow, int[] neighbourGreyRow, double[] energyRow, int from, int to) {
+		int x = from;
+		for (int upper = from + HALF_INTS.loopBound(to - from); x < upper; x += HALF_INTS.length()) {
+			IntVector grey = IntVector.fromArray(HALF_INTS, greyRow, x);
+			IntVector dx = IntVector.fromArray(HALF_INTS, greyRow, x + 1).sub(grey);
+			IntVector dy = IntVector.fromArray(HALF_INTS, neighbourGreyRow, x).sub(grey);
+			IntVector squares = dx.mul(dx).add(dy.mul(dy));
+			((DoubleVector)squares.convertShape(VectorOperators.I2D, DOUBLES, 0))
+					.lanewise(VectorOperators.SQRT)
+					.intoArray(energyRow, x);
+		}
+		for (; x < to; x++) {
+			int dx = greyRow[x + 1] - greyRow[x];
+			int dy = neighbourGreyRow[x] - greyRow[x];
+			energyRow[x] = Math.sqrt(dx * dx + dy * dy);
+		}
+	}
+
+	@Override
+	public void forwardCostsRow(int[] greyRowAbove, int[] greyRow, double[] costsRowAbove, double[] energyRow,
+			double[] costsRow, int[] minXsRow, int from, int to, boolean tiesToTheRight) {
+		int x = from;
+		IntVector lanes = IntVector.zero(HALF_INTS).addIndex(1);
+		for (int upper = from + HALF_INTS.loopBound(to - from); x < upper; x += HALF_INTS.length()) {
+			IntVector left = IntVector.fromArray(HALF_INTS, greyRow, x - 1);
+			IntVector right = IntVector.fromArray(HALF_INTS, greyRow, x + 1);
+			IntVector above = IntVector.fromArray(HALF_INTS, greyRowAbove, x);
+			IntVector costV = left.sub(right).lanewise(VectorOperators.ABS);
+			IntVector costL = costV.add(above.sub(left).lanewise(VectorOperators.ABS));
+			IntVector costR = costV.add(above.sub(right).lanewise(VectorOperators.ABS));
+
+			DoubleVector sumL = DoubleVector.fromArray(DOUBLES, costsRowAbove, x - 1).add(toDoubles(costL));
+			DoubleVector sumV = DoubleVector.fromArray(DOUBLES, costsRowAbove, x).add(toDoubles(costV));
+			DoubleVector sumR = DoubleVector.fromArray(DOUBLES, costsRowAbove, x + 1).add(toDoubles(costR));
+			DoubleVector min = sumL.min(sumV).min(sumR);
+
+			VectorMask<Integer> isL = min.eq(sumL).cast(HALF_INTS);
+			VectorMask<Integer> isR = min.eq(sumR).cast(HALF_INTS);
+			IntVector minX = lanes.add(x);
+			if (tiesToTheRight) {
+				minX = minX.blend(minX.sub(1), isL).blend(minX.add(1), isR);
+			}
+			else {
+				minX = minX.blend(minX.add(1), isR).blend(minX.sub(1), isL);
+			}
+			minX.intoArray(minXsRow, x);
+			DoubleVector.fromArray(DOUBLES, energyRow, x).add(min).intoArray(costsRow, x);
+		}
+		for (; x < to; x++) {
+			long costV = Math.abs(greyRow[x - 1] - greyRow[x + 1]);
+			long costL = costV + Math.abs(greyRowAbove[x] - greyRow[x - 1]);
+			long costR = costV + Math.abs(greyRowAbove[x] - greyRow[x + 1]);
+			double sumL = costsRowAbove[x - 1] + costL;
+			double sumV = costsRowAbove[x] + costV;
+			double sumR = costsRowAbove[x + 1] + costR;
+			double min = Math.min(Math.min(sumL, sumV), sumR);
+			int minX = x;
+			if (tiesToTheRight) {
+				if (min == sumR)
+					minX = x + 1;
+				else if (min == sumL)
+					minX = x - 1;
+			}
+			else {
+				if (min == sumL)
+					minX = x - 1;
+				else if (min == sumR)
+					minX = x + 1;
+			}
+			costsRow[x] = energyRow[x] + min;
+			minXsRow[x] = minX;
+		}
+	}
+
+	private static DoubleVector toDoubles(IntVector ints) {
+		return (DoubleVector)ints.convertShape(VectorOperators.I2D, DOUBLES, 0);
+	}
+}
@@ -0,0 +1,28 @@
+package edu.cg.benchmarks;
+
+import java.util.Arrays;
+
+/*
+ * The entry point of benchmarks.jar. It takes the options of the JMH runner (-h lists them). Unless
+ * another format is given with -rf the results are written as JSON, and unless a file is given with
+ * -rff they go to jmh-result-VERSION.json, so the results of different versions can be kept side by
+ * side and compared.
+ */
+public class Benchmarks {
+	public static void main(String[] args) throws Exception {
+		boolean hasResultFormat = Arrays.asList(args).contains("-rf");
+		boolean hasResultFile = Arrays.asList(args).contains("-rff");
+		if (!hasResultFormat) {
+			args = Arrays.copyOf(args, args.length + 2);
+			args[args.length - 2] = "-rf";
+			args[args.length - 1] = "json";
+		}
+		if (!hasResultFormat && !hasResultFile) {
+			String version = Benchmarks.class.getPackage().getImplementationVersion();
+			args = Arrays.copyOf(args, args.length + 2);
+			args[args.length - 2] = "-rff";
+			args[args.length - 1] = "jmh-result-" + (version == null ? "dev" : version) + ".json";
+		}
+		org.openjdk.jmh.Main.main(args);
+	}
+}
@@ -0,0 +1,61 @@
+package edu.cg.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cg.BasicSeamsCarver;
+import edu.cg.BasicSeamsCarver.CarvingScheme;
+import edu.cg.Logger;
+import edu.cg.RGBWeights;
+import edu.cg.benchmarks.SyntheticImages.Entropy;
+
+/*
+ * Removes the given number of seams in both directions. A carver is used for a single carving, so
+ * every invocation creates its own. That is cheap: an INT_RGB image's pixels are shared with the
+ * carver, not copied, and carving only reads them, so the same image serves every invocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+public class CarveImageBenchmark {
+	@Param({ "320x240", "1280x960" })
+	public String size;
+
+	@Param({ "LOW", "MEDIUM", "HIGH" })
+	public Entropy entropy;
+
+	@Param({ "16", "64" })
+	public int seams;
+
+	@Param({ "VERTICAL_HORIZONTAL", "HORIZONTAL_VERTICAL", "INTERMITTENT" })
+	public CarvingScheme scheme;
+
+	private BufferedImage image;
+
+	@Setup
+	public void setUp() {
+		image = SyntheticImages.generate(size, entropy);
+	}
+
+	@Benchmark
+	public BufferedImage carveImage() {
+		BasicSeamsCarver carver = new BasicSeamsCarver(Logger.SILENT, image,
+				image.getWidth() - seams, image.getHeight() - seams, new RGBWeights(1, 1, 1));
+		return carver.carveImage(scheme);
+	}
+}
@@ -0,0 +1,67 @@
+package edu.cg.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cg.ImageProcessor;
+import edu.cg.Logger;
+import edu.cg.RGBWeights;
+import edu.cg.benchmarks.SyntheticImages.Entropy;
+
+/*
+ * The operations that do not carve. The interpolations scale the image to three quarters of its size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ImageProcessorBenchmark {
+	@Param({ "320x240", "1280x960" })
+	public String size;
+
+	@Param({ "LOW", "MEDIUM", "HIGH" })
+	public Entropy entropy;
+
+	private ImageProcessor processor;
+
+	@Setup
+	public void setUp() {
+		BufferedImage image = SyntheticImages.generate(size, entropy);
+		processor = new ImageProcessor(Logger.SILENT, image, new RGBWeights(1, 1, 1),
+				image.getWidth() * 3 / 4, image.getHeight() * 3 / 4);
+	}
+
+	@Benchmark
+	public BufferedImage greyscale() {
+		return processor.greyscale();
+	}
+
+	@Benchmark
+	public BufferedImage gradientMagnitude() {
+		return processor.gradientMagnitude();
+	}
+
+	@Benchmark
+	public BufferedImage nearestNeighbor() {
+		return processor.nearestNeighbor();
+	}
+
+	@Benchmark
+	public BufferedImage bilinear() {
+		return processor.bilinear();
+	}
+}
@@ -0,0 +1,74 @@
+package edu.cg.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cg.AdvancedSeamsCarver;
+import edu.cg.BasicSeamsCarver;
+import edu.cg.BasicSeamsCarver.CarvingScheme;
+import edu.cg.Logger;
+import edu.cg.RGBWeights;
+import edu.cg.benchmarks.SyntheticImages.Entropy;
+
+/*
+ * Showing the seams that would be removed, and upscaling by the given number of seams in both
+ * directions. Upscaling supports the two sequential schemes only, vertical seams first is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+public class SeamsBenchmark {
+	private static final int SEAM_COLOR_RGB = 0xFF0000;
+
+	@Param({ "320x240", "1280x960" })
+	public String size;
+
+	@Param({ "LOW", "MEDIUM", "HIGH" })
+	public Entropy entropy;
+
+	@Param({ "16", "64" })
+	public int seams;
+
+	private BufferedImage image;
+
+	@Setup
+	public void setUp() {
+		image = SyntheticImages.generate(size, entropy);
+	}
+
+	@Benchmark
+	public BufferedImage showVerticalSeams() {
+		BasicSeamsCarver carver = new BasicSeamsCarver(Logger.SILENT, image,
+				image.getWidth() - seams, image.getHeight(), new RGBWeights(1, 1, 1));
+		return carver.showSeams(true, SEAM_COLOR_RGB);
+	}
+
+	@Benchmark
+	public BufferedImage showHorizontalSeams() {
+		BasicSeamsCarver carver = new BasicSeamsCarver(Logger.SILENT, image,
+				image.getWidth(), image.getHeight() - seams, new RGBWeights(1, 1, 1));
+		return carver.showSeams(false, SEAM_COLOR_RGB);
+	}
+
+	@Benchmark
+	public BufferedImage upscale() {
+		AdvancedSeamsCarver carver = new AdvancedSeamsCarver(Logger.SILENT, image,
+				image.getWidth() + seams, image.getHeight() + seams, new RGBWeights(1, 1, 1));
+		return carver.resizeWithSeamCarving(CarvingScheme.VERTICAL_HORIZONTAL);
+	}
+}
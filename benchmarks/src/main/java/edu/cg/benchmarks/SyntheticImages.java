@@ -0,0 +1,100 @@
+package edu.cg.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/*
+ * Generated images, so the benchmarks do not depend on files and every run carves the same pixels.
+ * The entropy is how much the content varies: the energy of a smooth image is low everywhere and its
+ * seams are nearly straight, while noise gives every pixel a high energy and the seams wander.
+ */
+public final class SyntheticImages {
+	public static enum Entropy {
+		LOW,     // Smooth colour gradients.
+		MEDIUM,  // Gradients with overlapping rectangles and a little noise, like a simple photograph.
+		HIGH     // Uniform noise.
+	}
+
+	private static final long SEED = 0x5EA4C4;
+
+	private SyntheticImages() {
+	}
+
+	/*
+	 * The size is given as WIDTHxHEIGHT, as in the @Param values of the benchmarks.
+	 */
+	public static int width(String size) {
+		return Integer.parseInt(size.substring(0, size.indexOf('x')));
+	}
+
+	public static int height(String size) {
+		return Integer.parseInt(size.substring(size.indexOf('x') + 1));
+	}
+
+	public static BufferedImage generate(String size, Entropy entropy) {
+		return generate(width(size), height(size), entropy);
+	}
+
+	public static BufferedImage generate(int width, int height, Entropy entropy) {
+		Random random = new Random(SEED);
+		int[] pixels = new int[width * height];
+		if (entropy == Entropy.HIGH) {
+			for (int i = 0; i < pixels.length; i++) {
+				pixels[i] = random.nextInt() & 0xFFFFFF;
+			}
+		}
+		else {
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					pixels[y * width + x] = rgb(255 * x / width, 255 * y / height, 255 * (x + y) / (width + height));
+				}
+			}
+		}
+		if (entropy == Entropy.MEDIUM) {
+			drawRectangles(pixels, width, height, random);
+			for (int i = 0; i < pixels.length; i++) {
+				int noise = random.nextInt(17) - 8;
+				pixels[i] = rgb(red(pixels[i]) + noise, green(pixels[i]) + noise, blue(pixels[i]) + noise);
+			}
+		}
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		image.setRGB(0, 0, width, height, pixels, 0, width);
+		return image;
+	}
+
+	private static void drawRectangles(int[] pixels, int width, int height, Random random) {
+		int numOfRectangles = Math.max(width * height / 4096, 1);
+		for (int r = 0; r < numOfRectangles; r++) {
+			int rectangleWidth = 1 + random.nextInt(Math.max(width / 8, 1));
+			int rectangleHeight = 1 + random.nextInt(Math.max(height / 8, 1));
+			int fromX = random.nextInt(width - rectangleWidth + 1);
+			int fromY = random.nextInt(height - rectangleHeight + 1);
+			int colour = random.nextInt() & 0xFFFFFF;
+			for (int y = fromY; y < fromY + rectangleHeight; y++) {
+				for (int x = fromX; x < fromX + rectangleWidth; x++) {
+					pixels[y * width + x] = colour;
+				}
+			}
+		}
+	}
+
+	private static int rgb(int red, int green, int blue) {
+		return clamp(red) << 16 | clamp(green) << 8 | clamp(blue);
+	}
+
+	private static int clamp(int channel) {
+		return Math.max(0, Math.min(channel, 255));
+	}
+
+	private static int red(int rgb) {
+		return (rgb >> 16) & 0xFF;
+	}
+
+	private static int green(int rgb) {
+		return (rgb >> 8) & 0xFF;
+	}
+
+	private static int blue(int rgb) {
+		return rgb & 0xFF;
+	}
+}
@@ -2,6 +2,7 @@ package edu.cg.menu;
 
 /*
  * This class displays an image in a new window and allows to save it as a PNG file.
+ * When it is given a seam order map it also offers sliders for a live retargeting preview.
  */
 
 import java.awt.BorderLayout;
@@ -15,14 +16,20 @@ import javax.imageio.ImageIO;
 import javax.swing.JButton;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JSlider;
 import javax.swing.border.EmptyBorder;
 
+import edu.cg.SeamOrderMap;
+
 @SuppressWarnings("serial")
 public class ImageWindow extends JFrame {
 	private MenuWindow menuWindow;
 	private BufferedImage img;
+	private JPanel panelImage;
+	private JButton btnSetWorkingImg;
 
 	/**
 	 * Create the window.
@@ -48,16 +55,52 @@ public class ImageWindow extends JFrame {
 		});
 		contentPane.add(btnSaveAs, BorderLayout.NORTH);
 		
-		JPanel panelImage = new ImagePanel();
+		panelImage = new ImagePanel();
 		contentPane.add(panelImage, BorderLayout.CENTER);
 		
-		JButton btnSetWorkingImg = new JButton("Set as working image");
-		btnSetWorkingImg.addActionListener(e -> menuWindow.setWorkingImage(img, title));
+		btnSetWorkingImg = new JButton("Set as working image");
+		btnSetWorkingImg.addActionListener(e -> menuWindow.setWorkingImage(this.img, getTitle()));
 		contentPane.add(btnSetWorkingImg, BorderLayout.SOUTH);
 		
 		pack();
 	}
 	
+	/**
+	 * Create a window that retargets the image while the sliders are dragged.
+	 */
+	public ImageWindow(SeamOrderMap seamOrderMap, String title, MenuWindow menuWindow) {
+		this(seamOrderMap.retarget(seamOrderMap.getWidth(), seamOrderMap.getHeight()), title, menuWindow);
+		
+		JSlider widthSlider = new JSlider(seamOrderMap.getMinWidth(), seamOrderMap.getWidth(), seamOrderMap.getWidth());
+		JSlider heightSlider = new JSlider(seamOrderMap.getMinHeight(), seamOrderMap.getHeight(), seamOrderMap.getHeight());
+		JLabel lblSize = new JLabel(sizeDescription());
+		Runnable retarget = () -> {
+			img = seamOrderMap.retarget(widthSlider.getValue(), heightSlider.getValue());
+			lblSize.setText(sizeDescription());
+			panelImage.repaint();
+		};
+		widthSlider.addChangeListener(e -> retarget.run());
+		heightSlider.addChangeListener(e -> retarget.run());
+		
+		JPanel panelSliders = new JPanel();
+		panelSliders.add(new JLabel("Width:"));
+		panelSliders.add(widthSlider);
+		panelSliders.add(new JLabel("Height:"));
+		panelSliders.add(heightSlider);
+		panelSliders.add(lblSize);
+		
+		JPanel panelSouth = new JPanel(new BorderLayout(0, 0));
+		panelSouth.add(panelSliders, BorderLayout.NORTH);
+		panelSouth.add(btnSetWorkingImg, BorderLayout.SOUTH);
+		getContentPane().add(panelSouth, BorderLayout.SOUTH);
+		
+		pack();
+	}
+	
+	private String sizeDescription() {
+		return "[" + img.getWidth() + "][" + img.getHeight() + "]";
+	}
+	
 	private class ImagePanel extends JPanel {
 		public ImagePanel() {
 			setPreferredSize(new Dimension(img.getWidth(), img.getHeight()));
@@ -65,6 +108,7 @@ public class ImageWindow extends JFrame {
 		
 		@Override
 		protected void paintComponent(Graphics g) {
+			super.paintComponent(g);
 			g.drawImage(img, 0, 0, null);
 		}
 	}
@@ -4,21 +4,35 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.GridLayout;
 import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import javax.swing.JFrame;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.border.EmptyBorder;
 
 import edu.cg.RGBWeights;
 import edu.cg.AdvancedSeamsCarver;
+import edu.cg.AsyncLogger;
 import edu.cg.ImageProcessor;
 import edu.cg.Logger;
 import edu.cg.BasicSeamsCarver;
 import edu.cg.BasicSeamsCarver.CarvingScheme;
+import edu.cg.BasicSeamsCarver.ProgressListener;
+import edu.cg.SeamOrderMap;
 import edu.cg.menu.components.ActionsController;
 import edu.cg.menu.components.CarvingSchemeSelector;
 import edu.cg.menu.components.ColorMixer;
 import edu.cg.menu.components.ImagePicker;
+import edu.cg.menu.components.JobsPanel;
 import edu.cg.menu.components.LogField;
 import edu.cg.menu.components.ScaleSelector;
 import edu.cg.menu.components.ScaleSelector.ResizingOperation;
@@ -30,6 +44,8 @@ public class MenuWindow extends JFrame implements Logger {
 	private static final boolean SHOWHORIZONTALSEAMS = false;
 	private BufferedImage workingImage;
 	private String imageTitle;
+	//Seam carving jobs run in the background, any number of them at a time.
+	private final ExecutorService jobsExecutor = Executors.newCachedThreadPool();
 	
 	//MARK: GUI fields
 	private ImagePicker imagePicker;
@@ -38,6 +54,8 @@ public class MenuWindow extends JFrame implements Logger {
 	private ActionsController actionsController;
 	private LogField logField;
 	private CarvingSchemeSelector schemeSelector;
+	private JobsPanel jobsPanel;
+	private AsyncLogger asyncLogger;
 	
 	public MenuWindow() {
 		super();
@@ -57,6 +75,10 @@ public class MenuWindow extends JFrame implements Logger {
 		actionsController = new ActionsController(this);
 		logField = new LogField();
 		schemeSelector = new CarvingSchemeSelector();
+		jobsPanel = new JobsPanel();
+		asyncLogger = new AsyncLogger(batch -> SwingUtilities.invokeLater(() -> logField.log(batch)));
+		logField.onEverySeamChanged(everySeam -> asyncLogger.setLevel(everySeam ? Level.DEBUG : Level.INFO));
+		Runtime.getRuntime().addShutdownHook(new Thread(asyncLogger::close, "log-flusher"));
 		
 		contentPane.add(imagePicker, BorderLayout.NORTH);
 		
@@ -77,6 +99,7 @@ public class MenuWindow extends JFrame implements Logger {
 		panel3.add(scaleSelector);
 		panel3.add(schemeSelector);
 		panel2.add(actionsController);
+		panel1.add(jobsPanel);
 		panel1.add(logField);
 		
 		workingImage = null;
@@ -144,10 +167,19 @@ public class MenuWindow extends JFrame implements Logger {
 					outHeight).bilinear();
 			break;
 			
+		case AREA_AVERAGING:
+			img = new ImageProcessor(this,
+					duplicateImage(),
+					rgbWeights,
+					outWidth,
+					outHeight).areaAveraging();
+			break;
+			
 		default: //seam carving
 			AdvancedSeamsCarver carver = new AdvancedSeamsCarver(this, duplicateImage(), outWidth, outHeight, rgbWeights);
-			img = carver.resizeWithSeamCarving(scheme);
-			presentMessage += ", " + scheme.description + ",";
+			presentMessage += ", " + scheme.description + ", [" + outWidth + "][" + outHeight + "]";
+			submitCarvingJob(presentMessage, carver, () -> carver.resizeWithSeamCarving(scheme));
+			return;
 		}
 		
 		presentMessage += " [" + outWidth + "][" + outHeight + "]";
@@ -160,8 +192,7 @@ public class MenuWindow extends JFrame implements Logger {
 		int outHeight = scaleSelector.height();
 		RGBWeights rgbWeights = colorMixer.getRGBWeights();
 		BasicSeamsCarver carver = new BasicSeamsCarver(this, duplicateImage(), outWidth, outHeight, rgbWeights);
-		BufferedImage verticalSeamImage = carver.showSeams(SHOWVERTICALSEAMS, Color.red.getRGB());
-		present(verticalSeamImage, "Show seams vertical");
+		submitCarvingJob("Show seams vertical", carver, () -> carver.showSeams(SHOWVERTICALSEAMS, Color.red.getRGB()));
 	}
 
 	public void showSeamsHorizontal() {
@@ -169,8 +200,78 @@ public class MenuWindow extends JFrame implements Logger {
 		int outHeight = scaleSelector.height();
 		RGBWeights rgbWeights = colorMixer.getRGBWeights();
 		BasicSeamsCarver carver = new BasicSeamsCarver(this, duplicateImage(), outWidth, outHeight, rgbWeights);
-		BufferedImage horizontalSeamImage = carver.showSeams(SHOWHORIZONTALSEAMS, Color.BLACK.getRGB());
-		present(horizontalSeamImage, "Show seams horizontal");
+		submitCarvingJob("Show seams horizontal", carver, () -> carver.showSeams(SHOWHORIZONTALSEAMS, Color.BLACK.getRGB()));
+	}
+	
+	public void retargetingPreview() {
+		int minWidth = scaleSelector.width();
+		int minHeight = scaleSelector.height();
+		RGBWeights rgbWeights = colorMixer.getRGBWeights();
+		BufferedImage image = duplicateImage();
+		submitCarvingJob("Retargeting preview",
+				progressListener -> new SeamOrderMap(this, image, rgbWeights, minWidth, minHeight, progressListener),
+				seamOrderMap -> new ImageWindow(seamOrderMap, imageTitle + "; Retargeting preview [" + minWidth + ".." + seamOrderMap.getWidth()
+						+ "][" + minHeight + ".." + seamOrderMap.getHeight() + "]", this).setVisible(true));
+	}
+	
+	/*
+	 * The carving runs on the jobs executor and its result is presented in a new window once it is done.
+	 * Cancelling the job interrupts the carving thread, which stops between seams.
+	 */
+	private void submitCarvingJob(String title, BasicSeamsCarver carver, Supplier<BufferedImage> carving) {
+		submitCarvingJob(title, progressListener -> {
+			carver.setProgressListener(progressListener);
+			return carving.get();
+		}, img -> present(img, title));
+	}
+	
+	private <T> void submitCarvingJob(String title, Function<ProgressListener, T> carving, Consumer<T> presentation) {
+		jobsExecutor.execute(new CarvingJob<>(title, carving, presentation));
+	}
+	
+	private class CarvingJob<T> extends SwingWorker<T, int[]> {
+		private final String title;
+		private final Function<ProgressListener, T> carving;
+		private final Consumer<T> presentation;
+		private final JobsPanel.Job job;
+		
+		public CarvingJob(String title, Function<ProgressListener, T> carving, Consumer<T> presentation) {
+			this.title = title;
+			this.carving = carving;
+			this.presentation = presentation;
+			this.job = jobsPanel.addJob(title, () -> cancel(true));
+		}
+		
+		@Override
+		protected T doInBackground() {
+			return carving.apply((numOfSeamsCarved, numOfSeamsToCarve) ->
+				publish(new int[] { numOfSeamsCarved, numOfSeamsToCarve })
+			);
+		}
+		
+		@Override
+		protected void process(List<int[]> progress) {
+			int[] latest = progress.get(progress.size() - 1);
+			job.setProgress(latest[0], latest[1]);
+		}
+		
+		@Override
+		protected void done() {
+			job.finish();
+			if (isCancelled()) {
+				log(title + " was cancelled.");
+				return;
+			}
+			try {
+				presentation.accept(get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				String msg = "Error in " + title + "!" + System.lineSeparator() + e.getCause().getMessage();
+				log(msg);
+				JOptionPane.showMessageDialog(MenuWindow.this, msg, "Error", JOptionPane.ERROR_MESSAGE);
+			}
+		}
 	}
 	
 	private void present(BufferedImage img, String title) {
@@ -207,8 +308,19 @@ public class MenuWindow extends JFrame implements Logger {
 	}
 	
 	//MARK: Logger
+	//Every thread logs through the ring buffer of the async logger, whose batches are appended on the event dispatch thread.
 	@Override
 	public void log(String s) {
-		logField.log(s);
+		asyncLogger.log(s);
+	}
+	
+	@Override
+	public void log(Level level, String s) {
+		asyncLogger.log(level, s);
+	}
+	
+	@Override
+	public boolean isEnabled(Level level) {
+		return asyncLogger.isEnabled(level);
 	}
 }
@@ -0,0 +1,82 @@
+package edu.cg.menu.components;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+
+import javax.swing.BoxLayout;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.JScrollPane;
+import javax.swing.border.EtchedBorder;
+
+/*
+ * Lists the running background jobs, each with its progress and a button that cancels it.
+ * It is only accessed on the event dispatch thread.
+ */
+@SuppressWarnings("serial")
+public class JobsPanel extends JPanel {
+	private JPanel jobsList;
+
+	public class Job {
+		private JPanel row;
+		private JProgressBar progressBar;
+
+		private Job(String title, Runnable cancelAction) {
+			row = new JPanel();
+			row.setLayout(new FlowLayout(FlowLayout.LEFT, 5, 2));
+			row.add(new JLabel(title));
+
+			progressBar = new JProgressBar();
+			progressBar.setStringPainted(true);
+			progressBar.setString("Starting");
+			row.add(progressBar);
+
+			JButton btnCancel = new JButton("Cancel");
+			btnCancel.addActionListener(e -> {
+				btnCancel.setEnabled(false);
+				progressBar.setString("Cancelling");
+				cancelAction.run();
+			});
+			row.add(btnCancel);
+		}
+
+		public void setProgress(int numOfSeamsCarved, int numOfSeamsToCarve) {
+			progressBar.setMaximum(Math.max(numOfSeamsToCarve, 1));
+			progressBar.setValue(numOfSeamsCarved);
+			progressBar.setString(numOfSeamsCarved + " / " + numOfSeamsToCarve + " seams");
+		}
+
+		public void finish() {
+			jobsList.remove(row);
+			jobsList.revalidate();
+			jobsList.repaint();
+		}
+	}
+
+	public JobsPanel() {
+		super();
+
+		setBorder(new EtchedBorder(EtchedBorder.LOWERED, null, null));
+		setLayout(new BorderLayout(0, 0));
+
+		JLabel lblJobs = new JLabel(" Jobs:  ");
+		add(lblJobs, BorderLayout.WEST);
+
+		jobsList = new JPanel();
+		jobsList.setLayout(new BoxLayout(jobsList, BoxLayout.Y_AXIS));
+		JPanel top = new JPanel(new BorderLayout(0, 0));
+		top.add(jobsList, BorderLayout.NORTH);
+		JScrollPane scrollJobs = new JScrollPane(top);
+		add(scrollJobs);
+	}
+
+	public Job addJob(String title, Runnable cancelAction) {
+		Job job = new Job(title, cancelAction);
+		jobsList.add(job.row);
+		jobsList.revalidate();
+		jobsList.repaint();
+		return job;
+	}
+}
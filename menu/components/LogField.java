@@ -1,19 +1,33 @@
 package edu.cg.menu.components;
 
 import java.awt.BorderLayout;
-import java.util.Calendar;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.function.Consumer;
 
+import javax.swing.JCheckBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.border.EtchedBorder;
 
+import edu.cg.AsyncLogger;
 import edu.cg.Logger;
 
+/*
+ * Only accessed on the event dispatch thread: other threads log through an AsyncLogger whose batches
+ * are appended here (see MenuWindow).
+ */
 @SuppressWarnings("serial")
 public class LogField extends JPanel implements Logger {
+	private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
 	private JTextArea txtLog;
+	private JCheckBox chkEverySeam;
 	
 	
 	public LogField() {
@@ -30,24 +44,32 @@ public class LogField extends JPanel implements Logger {
 		txtLog.setLineWrap(true);
 		JScrollPane scrollLog = new JScrollPane(txtLog);
 		add(scrollLog);
+
+		chkEverySeam = new JCheckBox("Every seam");
+		chkEverySeam.setToolTipText("Also log the steps of every seam, which slows down carving.");
+		add(chkEverySeam, BorderLayout.EAST);
+	}
+
+	public void onEverySeamChanged(Consumer<Boolean> listener) {
+		chkEverySeam.addActionListener(e -> listener.accept(chkEverySeam.isSelected()));
 	}
 
 	@Override
-	public synchronized void log(String s) {
-		if(s == null)
-			s = "null";
-		
-		Calendar cal = Calendar.getInstance();
-		String hh = convertTime(cal.get(Calendar.HOUR_OF_DAY));
-		String mm = convertTime(cal.get(Calendar.MINUTE));
-		String ss = convertTime(cal.get(Calendar.SECOND));
-		String time = "[" + hh + ":" + mm + ":" + ss + "] ~ ";
-		String msg = time + s + System.lineSeparator();
-		txtLog.append(msg);
+	public void log(String s) {
+		txtLog.append(format(System.currentTimeMillis(), s == null ? "null" : s));
 	}
 	
-	private static String convertTime(int t) {
-		return (t < 10 ? "0" : "") + t;
+	public void log(List<AsyncLogger.Message> batch) {
+		StringBuilder text = new StringBuilder();
+		for (AsyncLogger.Message message : batch) {
+			text.append(format(message.timeMillis, message.text));
+		}
+		txtLog.append(text.toString());
+	}
+
+	private static String format(long timeMillis, String s) {
+		LocalTime time = LocalTime.ofInstant(Instant.ofEpochMilli(timeMillis), ZoneId.systemDefault());
+		return "[" + TIME_FORMAT.format(time) + "] ~ " + s + System.lineSeparator();
 	}
 
 }
@@ -17,6 +17,7 @@ public class ScaleSelector extends JPanel {
 	
 	private Checkbox nearestNeighbor;
 	private Checkbox bilinear;
+	private Checkbox areaAveraging;
 	
 	public ScaleSelector() {
 		super();
@@ -34,9 +35,11 @@ public class ScaleSelector extends JPanel {
 		CheckboxGroup group = new CheckboxGroup();
 		nearestNeighbor = new Checkbox("Nearest neighbor  ", group, true);
 		bilinear = new Checkbox("Bilinear  ", group, false);
+		areaAveraging = new Checkbox("Area averaging  ", group, false);
 		Checkbox seamCarving = new Checkbox("Seam carving", group, false);
 		add(nearestNeighbor);
 		add(bilinear);
+		add(areaAveraging);
 		add(seamCarving);
 	}
 	
@@ -71,6 +74,7 @@ public class ScaleSelector extends JPanel {
 	public static enum ResizingOperation {
 		NEAREST_NEIGHBOR("Nearest Neighbor"),
 		BILINEAR("Bilinear"),
+		AREA_AVERAGING("Area Averaging"),
 		SEAM_CARVING("Seam Carving");
 		
 		public final String title;
@@ -84,6 +88,8 @@ public class ScaleSelector extends JPanel {
 			return ResizingOperation.NEAREST_NEIGHBOR;
 		else if(bilinear.getState())
 			return ResizingOperation.BILINEAR;
+		else if(areaAveraging.getState())
+			return ResizingOperation.AREA_AVERAGING;
 		else
 			return ResizingOperation.SEAM_CARVING;
 	}